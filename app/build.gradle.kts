@@ -155,6 +155,10 @@ android {
     }
 }
 
+dependencies {
+    implementation(project(":core"))
+}
+
 androidComponents.onVariants { variant ->
     variant.sources.assets!!.addGeneratedSourceDirectory(archive) {
         project.objects.directoryProperty().apply {
@@ -0,0 +1,197 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.chiller3.pixellight.core.AdaptiveBrightness;
+
+/**
+ * Feeds the ambient light sensor into {@link AdaptiveBrightness} while the torch is on.
+ *
+ * <p>The sensor is sampled at a low rate and its events are batched in the sensor hub for up to
+ * {@link #MAX_REPORT_LATENCY_US}, so the app's thread only wakes up for a whole batch instead of
+ * for every sample. The level is only picked once per delivered batch. On devices whose light
+ * sensor has no FIFO, the events arrive one at a time instead, which shows up in the statistics.
+ *
+ * <p>Everything is called on the thread of the {@link Handler} that is passed to
+ * {@link #start(Handler)}.
+ */
+public class AmbientLightMonitor implements SensorEventListener {
+    private static final String TAG = AmbientLightMonitor.class.getSimpleName();
+
+    public static final int SAMPLING_PERIOD_US = 1_000_000;
+    public static final int MAX_REPORT_LATENCY_US = 10_000_000;
+
+    /**
+     * @param activeMs Total time that the sensor was registered
+     * @param samples Number of sensor events received
+     * @param deliveries Number of times that the thread was woken up for a batch of events
+     * @param cpuTimeNs Thread CPU time spent handling the events
+     * @param adjustments Number of times that a new level was picked
+     * @param fifoEvents Number of events that the sensor can batch, 0 if it can't batch, or -1
+     *                   if there is no light sensor or it hasn't been looked up yet
+     */
+    public record Stats(long activeMs, long samples, long deliveries, long cpuTimeNs,
+                        long adjustments, int fifoEvents) {
+        public double deliveriesPerMinute() {
+            return activeMs > 0 ? deliveries * 60_000.0 / activeMs : 0.0;
+        }
+    }
+
+    public interface Callback {
+        /**
+         * Get the level to use in bright surroundings or -1 if the brightness shouldn't be changed
+         * right now.
+         */
+        @WorkerThread
+        int getAdaptiveCeiling();
+
+        @WorkerThread
+        void onAdaptiveLevel(int level);
+    }
+
+    private final SensorManager sensorManager;
+    private final Callback callback;
+    private final AdaptiveBrightness adaptive = new AdaptiveBrightness();
+    private final Runnable evaluate = this::evaluate;
+    private Sensor sensor;
+    private boolean sensorQueried = false;
+    private Handler handler;
+    // Start of the current active interval.
+    private long startElapsedMs;
+    private long activeMs = 0;
+    private long samples = 0;
+    private long deliveries = 0;
+    private long cpuTimeNs = 0;
+    private long adjustments = 0;
+
+    public AmbientLightMonitor(@NonNull Context context, @NonNull Callback callback) {
+        sensorManager = context.getSystemService(SensorManager.class);
+        this.callback = callback;
+    }
+
+    @WorkerThread
+    public boolean isActive() {
+        return handler != null;
+    }
+
+    /** Start sampling the light sensor. The first level is picked as soon as there is a sample. */
+    @WorkerThread
+    public void start(@NonNull Handler handler) {
+        if (isActive()) {
+            return;
+        }
+
+        if (!sensorQueried) {
+            sensor = sensorManager.getDefaultSensor(Sensor.TYPE_LIGHT);
+            sensorQueried = true;
+
+            if (sensor == null) {
+                Log.w(TAG, "No light sensor available");
+            } else {
+                Log.d(TAG, "Using light sensor " + sensor.getName() + " with a FIFO of "
+                        + sensor.getFifoMaxEventCount() + " events");
+            }
+        }
+
+        if (sensor == null) {
+            return;
+        } else if (!sensorManager.registerListener(this, sensor, SAMPLING_PERIOD_US,
+                MAX_REPORT_LATENCY_US, handler)) {
+            Log.w(TAG, "Failed to register light sensor listener");
+            return;
+        }
+
+        this.handler = handler;
+        startElapsedMs = SystemClock.elapsedRealtime();
+        adaptive.reset();
+
+        // Don't wait for a whole batch for the initial level.
+        sensorManager.flush(this);
+    }
+
+    @WorkerThread
+    public void stop() {
+        if (!isActive()) {
+            return;
+        }
+
+        sensorManager.unregisterListener(this);
+        handler.removeCallbacks(evaluate);
+        handler = null;
+
+        activeMs += SystemClock.elapsedRealtime() - startElapsedMs;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        if (!isActive()) {
+            return;
+        }
+
+        final var startCpuNs = Debug.threadCpuTimeNanos();
+
+        ++samples;
+        adaptive.addSample(event.timestamp, event.values[0]);
+
+        // A batch is delivered in a single message, so this runs once after the whole batch.
+        handler.removeCallbacks(evaluate);
+        handler.post(evaluate);
+
+        cpuTimeNs += Debug.threadCpuTimeNanos() - startCpuNs;
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+
+    @WorkerThread
+    private void evaluate() {
+        final var startCpuNs = Debug.threadCpuTimeNanos();
+
+        ++deliveries;
+
+        final var ceiling = callback.getAdaptiveCeiling();
+        if (ceiling > 0) {
+            final var level = adaptive.poll(SystemClock.elapsedRealtimeNanos(), ceiling);
+            if (level > 0) {
+                if (MainApplication.VERBOSE) {
+                    Log.d(TAG, "Switching to adaptive level " + level);
+                }
+
+                ++adjustments;
+                callback.onAdaptiveLevel(level);
+            }
+        }
+
+        cpuTimeNs += Debug.threadCpuTimeNanos() - startCpuNs;
+    }
+
+    /** Get the totals so far, including the current active interval. */
+    @WorkerThread
+    @NonNull
+    public Stats getStats() {
+        var activeMs = this.activeMs;
+        if (isActive()) {
+            activeMs += SystemClock.elapsedRealtime() - startElapsedMs;
+        }
+
+        final var fifoEvents = sensor != null ? sensor.getFifoMaxEventCount() : -1;
+
+        return new Stats(activeMs, samples, deliveries, cpuTimeNs, adjustments, fifoEvents);
+    }
+}
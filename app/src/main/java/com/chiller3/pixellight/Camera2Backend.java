@@ -0,0 +1,975 @@
+/*
+ * SPDX-FileCopyrightText: 2024-2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight;
+
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.OutputConfiguration;
+import android.hardware.camera2.params.SessionConfiguration;
+import android.os.Handler;
+import android.os.Trace;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.chiller3.pixellight.core.CameraBackend;
+import com.chiller3.pixellight.core.CameraDetails;
+import com.chiller3.pixellight.core.CameraException;
+import com.chiller3.pixellight.core.CaptureStrategy;
+import com.chiller3.pixellight.core.TorchError;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * {@link CameraBackend} implementation for camera2. All callbacks are run on the handler passed to
+ * {@link #attach(Handler)}. While detached, torch callbacks are remembered, but not registered
+ * with the camera service, and nothing else may be called.
+ *
+ * <p>Opening the camera, configuring a session, and each capture are async trace sections, and the
+ * state machine callbacks run inside regular trace sections, so they show up in system traces.
+ *
+ * <p>Patterns are submitted as a single burst, which loops with {@code setRepeatingBurst()} if the
+ * pattern repeats. Every frame sets {@link CaptureRequest#SENSOR_FRAME_DURATION}, which the camera
+ * honors because 3A is off in {@link CameraDevice#TEMPLATE_MANUAL} requests, so the edges are as
+ * precise as the sensor clock.
+ */
+public class Camera2Backend implements CameraBackend {
+    private static final String TAG = Camera2Backend.class.getSimpleName();
+
+    // Number of output sizes, from smallest to largest, to try before falling back to letting the
+    // camera pick the size.
+    private static final int MAX_OUTPUT_SIZE_CANDIDATES = 3;
+    // Assumed shortest frame duration if the camera doesn't report one for the output size.
+    private static final long DEFAULT_MIN_FRAME_DURATION_NS = 1_000_000_000L / 30;
+
+    private static final String TRACE_OPEN_CAMERA = "openCamera";
+    private static final String TRACE_CONFIGURE_SESSION = "configureSession";
+    private static final String TRACE_CAPTURE = "capture";
+
+    private final CameraManager cameraManager;
+    private final Preferences prefs;
+    // Null while detached. Camera2 calls the executor from binder threads.
+    private volatile Handler handler;
+    private final Executor executor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            if (!handler.post(command)) {
+                throw new RejectedExecutionException("Failed to queue runnable: " + command);
+            }
+        }
+    };
+    private final HashMap<TorchCallback, CameraManager.TorchCallback> torchCallbacks =
+            new HashMap<>();
+    // Only accessed from the handler thread.
+    private final HashMap<String, CameraCharacteristics> characteristicsCache = new HashMap<>();
+    // Selected output size for each camera ID. A null value means that the camera picks the size.
+    private final HashMap<String, Size> outputSizes = new HashMap<>();
+    private final HashMap<String, LowPowerSettings> lowPowerSettings = new HashMap<>();
+    private int nextTraceCookie = 0;
+
+    // The output surface is never read from. It is recreated only if the selected size changes.
+    private SurfaceTexture surfaceTexture;
+    private Surface surface;
+    private Size surfaceSize;
+
+    /** The backend starts out detached. */
+    public Camera2Backend(@NonNull Context context, @NonNull Preferences prefs) {
+        cameraManager = context.getSystemService(CameraManager.class);
+        this.prefs = prefs;
+    }
+
+    /** Release the output surface. The backend must not be used afterwards. */
+    @AnyThread
+    public void release() {
+        releaseSurface();
+    }
+
+    /**
+     * Start running callbacks on {@code handler}'s thread and register the torch callbacks with
+     * the camera service. The camera service immediately reports the current torch mode, so
+     * changes made while detached are not missed. Does nothing if already attached to
+     * {@code handler}.
+     */
+    @AnyThread
+    public void attach(@NonNull Handler handler) {
+        synchronized (torchCallbacks) {
+            if (this.handler == handler) {
+                return;
+            } else if (this.handler != null) {
+                throw new IllegalStateException("Already attached to a different handler");
+            }
+
+            this.handler = handler;
+
+            for (final var wrapper : torchCallbacks.values()) {
+                cameraManager.registerTorchCallback(wrapper, handler);
+            }
+        }
+    }
+
+    /**
+     * Unregister the torch callbacks from the camera service and release the output surface and
+     * the cached camera characteristics, which hold on to a copy of the camera metadata. This must
+     * only be called while no camera is open. Afterwards, the handler's thread can be stopped.
+     */
+    @WorkerThread
+    public void detach() {
+        synchronized (torchCallbacks) {
+            for (final var wrapper : torchCallbacks.values()) {
+                cameraManager.unregisterTorchCallback(wrapper);
+            }
+
+            handler = null;
+        }
+
+        releaseSurface();
+        characteristicsCache.clear();
+    }
+
+    private void releaseSurface() {
+        if (surface != null) {
+            surface.release();
+            surface = null;
+        }
+        if (surfaceTexture != null) {
+            surfaceTexture.release();
+            surfaceTexture = null;
+        }
+    }
+
+    /**
+     * Get the output surface with the specified default buffer size. If the size is null, the
+     * buffer size is left unset and the camera picks the size, like it did before the output size
+     * was selected explicitly.
+     */
+    @WorkerThread
+    @NonNull
+    private Surface getSurface(@Nullable Size size) {
+        if (surface == null || !Objects.equals(size, surfaceSize)) {
+            releaseSurface();
+
+            surfaceTexture = new SurfaceTexture(0);
+            if (size != null) {
+                surfaceTexture.setDefaultBufferSize(size.getWidth(), size.getHeight());
+            }
+            surface = new Surface(surfaceTexture);
+            surfaceSize = size;
+        }
+
+        return surface;
+    }
+
+    @WorkerThread
+    @NonNull
+    private CameraCharacteristics getCameraCharacteristics(@NonNull String cameraId)
+            throws CameraAccessException {
+        var characteristics = characteristicsCache.get(cameraId);
+        if (characteristics == null) {
+            characteristics = cameraManager.getCameraCharacteristics(cameraId);
+            characteristicsCache.put(cameraId, characteristics);
+        }
+
+        return characteristics;
+    }
+
+    /** Get the low-power settings for a camera or null if the mode is disabled. */
+    @WorkerThread
+    @Nullable
+    private LowPowerSettings getLowPowerSettings(@NonNull String cameraId)
+            throws CameraAccessException {
+        if (!prefs.getLowPowerTorch()) {
+            return null;
+        }
+
+        var settings = lowPowerSettings.get(cameraId);
+        if (settings == null) {
+            settings = LowPowerSettings.fromCharacteristics(getCameraCharacteristics(cameraId));
+            Log.d(TAG, "Low-power settings for camera " + cameraId + ": " + settings);
+
+            lowPowerSettings.put(cameraId, settings);
+        }
+
+        return settings;
+    }
+
+    @NonNull
+    private CaptureRequest.Builder createRequestBuilder(@NonNull CameraDevice camera,
+            @NonNull Surface surface, @Nullable LowPowerSettings lowPower)
+            throws CameraAccessException {
+        final var builder = camera.createCaptureRequest(CameraDevice.TEMPLATE_MANUAL);
+        builder.addTarget(surface);
+
+        if (lowPower != null) {
+            lowPower.apply(builder);
+        }
+
+        return builder;
+    }
+
+    @NonNull
+    private SessionConfiguration createSessionConfiguration(
+            @NonNull Surface surface, @NonNull CameraCaptureSession.StateCallback callback) {
+        final var output = Collections.singletonList(new OutputConfiguration(surface));
+
+        return new SessionConfiguration(
+                SessionConfiguration.SESSION_REGULAR, output, executor, callback);
+    }
+
+    /**
+     * Find the smallest output size that the camera supports for the session. No pixel is ever
+     * read, so anything larger only costs ISP bandwidth and power. The result is cached per camera
+     * ID because the queries perform binder calls to the camera service.
+     */
+    @WorkerThread
+    @Nullable
+    private Size selectOutputSize(@NonNull CameraDevice camera) {
+        final var cameraId = camera.getId();
+        if (outputSizes.containsKey(cameraId)) {
+            return outputSizes.get(cameraId);
+        }
+
+        Size selected = null;
+
+        try {
+            final var characteristics = getCameraCharacteristics(cameraId);
+            final var map = characteristics.get(
+                    CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            final var sizes = map != null ? map.getOutputSizes(SurfaceTexture.class) : null;
+
+            if (sizes != null && sizes.length > 0) {
+                Arrays.sort(sizes, Comparator.comparingLong(
+                        (Size s) -> (long) s.getWidth() * s.getHeight()));
+
+                for (int i = 0; i < Math.min(sizes.length, MAX_OUTPUT_SIZE_CANDIDATES); ++i) {
+                    if (isOutputSizeSupported(camera, sizes[i])) {
+                        selected = sizes[i];
+                        break;
+                    }
+                }
+            }
+        } catch (CameraAccessException | IllegalArgumentException e) {
+            Log.w(TAG, "Failed to query output sizes for camera " + cameraId, e);
+            // Don't cache the failure. The camera may just be temporarily inaccessible.
+            return null;
+        }
+
+        if (selected != null) {
+            Log.d(TAG, "Selected output size " + selected + " for camera " + cameraId);
+        } else {
+            Log.w(TAG, "No validated output size for camera " + cameraId + "; using default");
+        }
+
+        outputSizes.put(cameraId, selected);
+        return selected;
+    }
+
+    /** Get the shortest frame duration that the camera supports with the output size. */
+    @WorkerThread
+    private long getMinFrameDurationNs(@NonNull String cameraId, @Nullable Size size) {
+        if (size != null) {
+            try {
+                final var map = getCameraCharacteristics(cameraId).get(
+                        CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+                if (map != null) {
+                    final var durationNs = map.getOutputMinFrameDuration(
+                            SurfaceTexture.class, size);
+                    if (durationNs > 0) {
+                        return durationNs;
+                    }
+                }
+            } catch (CameraAccessException | IllegalArgumentException e) {
+                Log.w(TAG, "Failed to query minimum frame duration for camera " + cameraId, e);
+            }
+        }
+
+        return DEFAULT_MIN_FRAME_DURATION_NS;
+    }
+
+    @WorkerThread
+    private boolean isOutputSizeSupported(@NonNull CameraDevice camera, @NonNull Size size)
+            throws CameraAccessException {
+        final var configuration = createSessionConfiguration(getSurface(size),
+                new CameraCaptureSession.StateCallback() {
+                    @Override
+                    public void onConfigured(@NonNull CameraCaptureSession session) {}
+
+                    @Override
+                    public void onConfigureFailed(@NonNull CameraCaptureSession session) {}
+                });
+
+        try {
+            return camera.isSessionConfigurationSupported(configuration);
+        } catch (UnsupportedOperationException e) {
+            // The HAL can't answer the query. Sizes from the stream configuration map are
+            // guaranteed to work for a single output stream, so trust it.
+            return true;
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Output size " + size + " rejected by camera " + camera.getId(), e);
+            return false;
+        }
+    }
+
+    @NonNull
+    private static CameraException toCameraException(@NonNull CameraAccessException exception) {
+        final var error = switch (exception.getReason()) {
+            case CameraAccessException.CAMERA_DISABLED -> TorchError.BLOCKED_BY_POLICY;
+            case CameraAccessException.CAMERA_DISCONNECTED -> TorchError.DISCONNECTED;
+            case CameraAccessException.CAMERA_ERROR -> TorchError.DEVICE_ERROR;
+            case CameraAccessException.CAMERA_IN_USE -> TorchError.IN_USE;
+            case CameraAccessException.MAX_CAMERAS_IN_USE -> TorchError.MAXIMUM_IN_USE;
+            default -> TorchError.UNKNOWN;
+        };
+
+        return new CameraException(error, exception);
+    }
+
+    /**
+     * Find the first camera that supports the private Pixel flashlight brightness control. This
+     * performs binder calls to the camera service for every camera.
+     */
+    @Override
+    @Nullable
+    public CameraDetails queryCameraDetails() throws CameraException {
+        try {
+            for (final var cameraId : cameraManager.getCameraIdList()) {
+                final var characteristics = cameraManager.getCameraCharacteristics(cameraId);
+                final var maxBrightness = characteristics.get(
+                        ExperimentalKeys.CHARACTERISTICS_FLASHLIGHT_BRIGHTNESS_LEVEL_MAX);
+                if (maxBrightness == null) {
+                    continue;
+                }
+
+                // A maximum level of 1 means that the torch strength cannot be controlled.
+                final var maxTorchStrength = characteristics.get(
+                        CameraCharacteristics.FLASH_INFO_STRENGTH_MAXIMUM_LEVEL);
+
+                return new CameraDetails(cameraId, maxBrightness,
+                        maxTorchStrength != null && maxTorchStrength > 1
+                                ? Math.min(maxTorchStrength, maxBrightness) : 0);
+            }
+        } catch (CameraAccessException e) {
+            throw toCameraException(e);
+        }
+
+        return null;
+    }
+
+    @Override
+    public void turnOnTorch(@NonNull String cameraId, int strength) throws CameraException {
+        try {
+            cameraManager.turnOnTorchWithStrengthLevel(cameraId, strength);
+        } catch (CameraAccessException e) {
+            throw toCameraException(e);
+        } catch (IllegalArgumentException e) {
+            // The camera is gone or doesn't support the strength level anymore.
+            throw new CameraException(TorchError.NO_VALID_CAMERA, e);
+        }
+    }
+
+    @Override
+    public void turnOffTorch(@NonNull String cameraId) throws CameraException {
+        try {
+            cameraManager.setTorchMode(cameraId, false);
+        } catch (CameraAccessException e) {
+            throw toCameraException(e);
+        } catch (IllegalArgumentException e) {
+            // The camera is gone or has no flash unit.
+            throw new CameraException(TorchError.NO_VALID_CAMERA, e);
+        }
+    }
+
+    @Override
+    public void registerTorchCallback(@NonNull TorchCallback callback) {
+        final var wrapper = new CameraManager.TorchCallback() {
+            @Override
+            public void onTorchModeChanged(@NonNull String cameraId, boolean enabled) {
+                callback.onTorchModeChanged(cameraId, enabled);
+            }
+
+            @Override
+            public void onTorchModeUnavailable(@NonNull String cameraId) {
+                callback.onTorchModeUnavailable(cameraId);
+            }
+        };
+
+        synchronized (torchCallbacks) {
+            torchCallbacks.put(callback, wrapper);
+
+            if (handler != null) {
+                cameraManager.registerTorchCallback(wrapper, handler);
+            }
+        }
+    }
+
+    @Override
+    public void unregisterTorchCallback(@NonNull TorchCallback callback) {
+        synchronized (torchCallbacks) {
+            final var wrapper = torchCallbacks.remove(callback);
+
+            if (wrapper != null && handler != null) {
+                cameraManager.unregisterTorchCallback(wrapper);
+            }
+        }
+    }
+
+    @Override
+    public void openCamera(@NonNull String cameraId, @NonNull DeviceCallback callback)
+            throws CameraException {
+        final var cookie = ++nextTraceCookie;
+        final var stateCallback = new CameraDevice.StateCallback() {
+            private Device device;
+            private boolean tracing = true;
+
+            private void endTrace() {
+                if (tracing) {
+                    tracing = false;
+                    Trace.endAsyncSection(TRACE_OPEN_CAMERA, cookie);
+                }
+            }
+
+            @NonNull
+            private Device getDevice(@NonNull CameraDevice camera) {
+                if (device == null) {
+                    device = new Device(camera);
+                }
+                return device;
+            }
+
+            @Override
+            public void onOpened(@NonNull CameraDevice camera) {
+                endTrace();
+
+                Trace.beginSection("onCameraOpened");
+                try {
+                    callback.onOpened(getDevice(camera));
+                } finally {
+                    Trace.endSection();
+                }
+            }
+
+            @Override
+            public void onDisconnected(@NonNull CameraDevice camera) {
+                endTrace();
+                callback.onDisconnected(getDevice(camera));
+            }
+
+            @Override
+            public void onError(@NonNull CameraDevice camera, int error) {
+                final var torchError = switch (error) {
+                    case ERROR_CAMERA_IN_USE -> TorchError.IN_USE;
+                    case ERROR_MAX_CAMERAS_IN_USE -> TorchError.MAXIMUM_IN_USE;
+                    case ERROR_CAMERA_DISABLED -> TorchError.BLOCKED_BY_POLICY;
+                    case ERROR_CAMERA_DEVICE -> TorchError.DEVICE_ERROR;
+                    case ERROR_CAMERA_SERVICE -> TorchError.SERVICE_ERROR;
+                    default -> TorchError.UNKNOWN;
+                };
+
+                endTrace();
+                callback.onError(getDevice(camera), torchError);
+            }
+        };
+
+        Trace.beginAsyncSection(TRACE_OPEN_CAMERA, cookie);
+
+        try {
+            cameraManager.openCamera(cameraId, stateCallback, handler);
+        } catch (CameraAccessException e) {
+            stateCallback.endTrace();
+            throw toCameraException(e);
+        } catch (SecurityException e) {
+            stateCallback.endTrace();
+            throw new CameraException(TorchError.NO_PERMISSION, e);
+        } catch (IllegalArgumentException e) {
+            stateCallback.endTrace();
+            throw new CameraException(TorchError.NO_VALID_CAMERA, e);
+        }
+    }
+
+    @NonNull
+    private static FlashState getFlashState(@NonNull CaptureResult result) {
+        final var state = result.get(CaptureResult.FLASH_STATE);
+        if (state == null) {
+            return FlashState.UNKNOWN;
+        }
+
+        return switch (state) {
+            case CameraMetadata.FLASH_STATE_FIRED, CameraMetadata.FLASH_STATE_PARTIAL ->
+                    FlashState.ON;
+            case CameraMetadata.FLASH_STATE_READY, CameraMetadata.FLASH_STATE_CHARGING ->
+                    FlashState.OFF;
+            default -> FlashState.UNKNOWN;
+        };
+    }
+
+    private class Device implements CameraBackend.Device {
+        private final CameraDevice camera;
+
+        private Device(@NonNull CameraDevice camera) {
+            this.camera = camera;
+        }
+
+        @Override
+        @NonNull
+        public String getId() {
+            return camera.getId();
+        }
+
+        @Override
+        public void createSession(int maxBrightness, @NonNull CaptureStrategy strategy,
+                                  @NonNull SessionCallback callback) throws CameraException {
+            try {
+                final var size = selectOutputSize(camera);
+                final var surface = getSurface(size);
+                final var lowPower = getLowPowerSettings(camera.getId());
+                final var session = new Session(camera, surface, lowPower, strategy,
+                        maxBrightness, getMinFrameDurationNs(camera.getId(), size), callback);
+                final var sessionConfiguration =
+                        createSessionConfiguration(surface, session.stateCallback);
+
+                if (lowPower != null) {
+                    // Passing the same settings as session parameters lets the camera configure
+                    // the pipeline for them up front instead of reconfiguring on the first capture.
+                    sessionConfiguration.setSessionParameters(
+                            createRequestBuilder(camera, surface, lowPower).build());
+                }
+
+                session.beginTrace(TRACE_CONFIGURE_SESSION);
+                camera.createCaptureSession(sessionConfiguration);
+            } catch (CameraAccessException e) {
+                throw toCameraException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            camera.close();
+        }
+    }
+
+    private class Session implements CameraBackend.Session {
+        private final CameraDevice camera;
+        private final Surface surface;
+        private final LowPowerSettings lowPower;
+        private final CaptureStrategy strategy;
+        private final long minFrameDurationNs;
+        private final SessionCallback callback;
+        private CameraCaptureSession session;
+        // Results still expected for the last single capture or burst and whether any of the ones
+        // that already arrived failed. Only the last result is reported to the callback.
+        private int pendingResults = 0;
+        private boolean pendingFailed = false;
+        private FlashState pendingFlashState = FlashState.UNKNOWN;
+        // The current repeating request and whether its first result hasn't been reported yet.
+        private CaptureRequest repeatingRequest;
+        private boolean repeatingReportPending = false;
+        // Reused for every capture in this session.
+        private CaptureRequest.Builder captureRequest;
+        // Built capture requests for each brightness level. This is filled in lazily when needed
+        // and eagerly when the state machine asks for them to be prepared.
+        private final CaptureRequest[] captureRequests;
+        // Separate builder for pattern frames, which override the frame duration.
+        private CaptureRequest.Builder patternRequest;
+        // Tag of the requests of the pattern that is playing or null if there is none. Every
+        // pattern gets a new tag so that results from a stopped pattern are recognized.
+        private Object patternTag;
+        private boolean patternRepeating;
+        private int patternSequenceId;
+        // Frame number of the first frame of the pattern or -1 if it hasn't started yet.
+        private long patternFirstFrameNumber;
+        private PatternCallback patternCallback;
+        // Async trace section that is currently open for this session, if any. A session is either
+        // being configured or has at most one capture in flight.
+        private String traceName;
+        private int traceCookie;
+
+        private final CameraCaptureSession.StateCallback stateCallback =
+                new CameraCaptureSession.StateCallback() {
+                    @Override
+                    public void onConfigured(@NonNull CameraCaptureSession session) {
+                        Session.this.session = session;
+                        endTrace();
+
+                        Trace.beginSection("onSessionConfigured");
+                        try {
+                            callback.onConfigured(Session.this);
+                        } finally {
+                            Trace.endSection();
+                        }
+                    }
+
+                    @Override
+                    public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+                        endTrace();
+                        callback.onConfigureFailed(Session.this);
+                    }
+                };
+        private final CameraCaptureSession.CaptureCallback captureCallback =
+                new CameraCaptureSession.CaptureCallback() {
+                    @Override
+                    public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                                   @NonNull CaptureRequest request,
+                                                   @NonNull TotalCaptureResult result) {
+                        pendingFlashState = getFlashState(result);
+                        onResult(true);
+                    }
+
+                    @Override
+                    public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                                @NonNull CaptureRequest request,
+                                                @NonNull CaptureFailure failure) {
+                        onResult(false);
+                    }
+
+                    @Override
+                    public void onCaptureSequenceAborted(@NonNull CameraCaptureSession session,
+                                                         int sequenceId) {
+                        if (pendingResults > 0) {
+                            pendingResults = 0;
+                            pendingFailed = false;
+                            endTrace();
+                            callback.onCaptureFailed(Session.this);
+                        }
+                    }
+                };
+        private final CameraCaptureSession.CaptureCallback repeatingCallback =
+                new CameraCaptureSession.CaptureCallback() {
+                    @Override
+                    public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                                   @NonNull CaptureRequest request,
+                                                   @NonNull TotalCaptureResult result) {
+                        onRepeatingResult(request, getFlashState(result));
+                    }
+
+                    @Override
+                    public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                                @NonNull CaptureRequest request,
+                                                @NonNull CaptureFailure failure) {
+                        onRepeatingResult(request, null);
+                    }
+                };
+        private final CameraCaptureSession.CaptureCallback patternCaptureCallback =
+                new CameraCaptureSession.CaptureCallback() {
+                    @Override
+                    public void onCaptureStarted(@NonNull CameraCaptureSession session,
+                                                 @NonNull CaptureRequest request, long timestamp,
+                                                 long frameNumber) {
+                        // Frames start in order, so the first one to start is frame 0.
+                        if (request.getTag() == patternTag && patternFirstFrameNumber < 0) {
+                            patternFirstFrameNumber = frameNumber;
+                        }
+                    }
+
+                    @Override
+                    public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                                   @NonNull CaptureRequest request,
+                                                   @NonNull TotalCaptureResult result) {
+                        final var timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+                        onPatternResult(request, result.getFrameNumber(),
+                                timestamp != null ? timestamp : -1);
+                    }
+
+                    @Override
+                    public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                                @NonNull CaptureRequest request,
+                                                @NonNull CaptureFailure failure) {
+                        onPatternResult(request, failure.getFrameNumber(), -1);
+                    }
+
+                    @Override
+                    public void onCaptureSequenceCompleted(@NonNull CameraCaptureSession session,
+                                                           int sequenceId, long frameNumber) {
+                        if (patternTag != null && !patternRepeating
+                                && sequenceId == patternSequenceId) {
+                            final var callback = patternCallback;
+                            clearPattern();
+                            callback.onPatternFinished(Session.this);
+                        }
+                    }
+                };
+
+        private Session(@NonNull CameraDevice camera, @NonNull Surface surface,
+                        @Nullable LowPowerSettings lowPower, @NonNull CaptureStrategy strategy,
+                        int maxBrightness, long minFrameDurationNs,
+                        @NonNull SessionCallback callback) {
+            this.camera = camera;
+            this.surface = surface;
+            this.lowPower = lowPower;
+            this.strategy = strategy;
+            this.minFrameDurationNs = minFrameDurationNs;
+            this.callback = callback;
+            captureRequests = new CaptureRequest[maxBrightness + 1];
+        }
+
+        @WorkerThread
+        private void beginTrace(@NonNull String name) {
+            endTrace();
+
+            traceName = name;
+            traceCookie = ++nextTraceCookie;
+            Trace.beginAsyncSection(traceName, traceCookie);
+        }
+
+        @WorkerThread
+        private void endTrace() {
+            if (traceName != null) {
+                Trace.endAsyncSection(traceName, traceCookie);
+                traceName = null;
+            }
+        }
+
+        /** Report a capture result to the state machine. */
+        @WorkerThread
+        private void notifyCaptureResult(@Nullable FlashState flashState) {
+            endTrace();
+
+            Trace.beginSection("onCaptureCompleted");
+            try {
+                if (flashState != null) {
+                    callback.onCaptureCompleted(this, flashState);
+                } else {
+                    callback.onCaptureFailed(this);
+                }
+            } finally {
+                Trace.endSection();
+            }
+        }
+
+        @WorkerThread
+        @NonNull
+        private CaptureRequest getCaptureRequest(int brightness) throws CameraAccessException {
+            var request = captureRequests[brightness];
+            if (request != null) {
+                return request;
+            }
+
+            if (captureRequest == null) {
+                captureRequest = createRequestBuilder(camera, surface, lowPower);
+            }
+
+            setBrightness(captureRequest, brightness);
+
+            request = captureRequest.build();
+            captureRequests[brightness] = request;
+
+            return request;
+        }
+
+        private static void setBrightness(@NonNull CaptureRequest.Builder builder,
+                                          int brightness) {
+            if (brightness == 0) {
+                builder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_OFF);
+                builder.set(ExperimentalKeys.REQUEST_FLASHLIGHT_BRIGHTNESS_ENABLED, false);
+            } else {
+                builder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_TORCH);
+                builder.set(ExperimentalKeys.REQUEST_FLASHLIGHT_BRIGHTNESS_ENABLED, true);
+                builder.set(ExperimentalKeys.REQUEST_FLASHLIGHT_BRIGHTNESS, brightness);
+            }
+        }
+
+        @Override
+        public void prepare(int brightness) {
+            try {
+                getCaptureRequest(brightness);
+            } catch (CameraAccessException e) {
+                // The error will be reported when the request is actually needed.
+            }
+        }
+
+        @Override
+        public void capture(int brightness) throws CameraException {
+            try {
+                final var request = getCaptureRequest(brightness);
+
+                stopPattern();
+
+                beginTrace(TRACE_CAPTURE);
+
+                switch (strategy) {
+                    case SINGLE -> {
+                        pendingResults = 1;
+                        session.capture(request, captureCallback, handler);
+                    }
+                    case BURST -> {
+                        pendingResults = CaptureStrategy.BURST_SIZE;
+                        session.captureBurst(
+                                Collections.nCopies(CaptureStrategy.BURST_SIZE, request),
+                                captureCallback, handler);
+                    }
+                    case REPEATING -> {
+                        if (brightness == 0) {
+                            // Don't keep the pipeline busy while the torch is off.
+                            if (repeatingRequest != null) {
+                                repeatingRequest = null;
+                                repeatingReportPending = false;
+                                session.stopRepeating();
+                            }
+
+                            pendingResults = 1;
+                            session.capture(request, captureCallback, handler);
+                        } else {
+                            repeatingRequest = request;
+                            repeatingReportPending = true;
+                            session.setRepeatingRequest(request, repeatingCallback, handler);
+                        }
+                    }
+                }
+            } catch (CameraAccessException e) {
+                endTrace();
+                throw toCameraException(e);
+            }
+        }
+
+        @Override
+        public long getMinFrameDurationNs() {
+            return minFrameDurationNs;
+        }
+
+        @Override
+        public void playPattern(@NonNull int[] levels, long frameDurationNs, boolean repeat,
+                                @NonNull PatternCallback callback) throws CameraException {
+            try {
+                stopPattern();
+
+                if (repeatingRequest != null) {
+                    // A repeating burst replaces it anyway, but a one-shot burst would interleave
+                    // with it.
+                    repeatingRequest = null;
+                    repeatingReportPending = false;
+                    session.stopRepeating();
+                }
+
+                if (patternRequest == null) {
+                    patternRequest = createRequestBuilder(camera, surface, lowPower);
+                }
+
+                final var tag = new Object();
+                patternRequest.set(CaptureRequest.SENSOR_FRAME_DURATION, frameDurationNs);
+                patternRequest.setTag(tag);
+
+                // Only one request is built per distinct level.
+                final var requests = new CaptureRequest[captureRequests.length];
+                final var burst = new ArrayList<CaptureRequest>(levels.length);
+
+                for (final var level : levels) {
+                    if (requests[level] == null) {
+                        setBrightness(patternRequest, level);
+                        requests[level] = patternRequest.build();
+                    }
+                    burst.add(requests[level]);
+                }
+
+                if (repeat) {
+                    patternSequenceId = session.setRepeatingBurst(burst, patternCaptureCallback,
+                            handler);
+                } else {
+                    patternSequenceId = session.captureBurst(burst, patternCaptureCallback,
+                            handler);
+                }
+
+                patternTag = tag;
+                patternRepeating = repeat;
+                patternFirstFrameNumber = -1;
+                patternCallback = callback;
+            } catch (CameraAccessException e) {
+                throw toCameraException(e);
+            }
+        }
+
+        /** Stop the pattern that is playing, if any. Its remaining results are ignored. */
+        @WorkerThread
+        private void stopPattern() throws CameraAccessException {
+            if (patternTag == null) {
+                return;
+            }
+
+            final var repeating = patternRepeating;
+            clearPattern();
+
+            if (repeating) {
+                session.stopRepeating();
+            } else {
+                // Don't make the next level wait for the rest of the burst.
+                session.abortCaptures();
+            }
+        }
+
+        @WorkerThread
+        private void clearPattern() {
+            patternTag = null;
+            patternCallback = null;
+        }
+
+        @WorkerThread
+        private void onPatternResult(@NonNull CaptureRequest request, long frameNumber,
+                                     long timestampNs) {
+            if (patternTag == null || request.getTag() != patternTag
+                    || patternFirstFrameNumber < 0) {
+                return;
+            }
+
+            patternCallback.onPatternFrame(this, frameNumber - patternFirstFrameNumber,
+                    timestampNs);
+        }
+
+        @WorkerThread
+        private void onResult(boolean success) {
+            if (pendingResults == 0) {
+                return;
+            }
+
+            pendingFailed |= !success;
+
+            if (--pendingResults == 0) {
+                final var failed = pendingFailed;
+                pendingFailed = false;
+
+                notifyCaptureResult(failed ? null : pendingFlashState);
+            }
+        }
+
+        /** Handle a repeating request result. {@code flashState} is null if the capture failed. */
+        @WorkerThread
+        private void onRepeatingResult(@NonNull CaptureRequest request,
+                                       @Nullable FlashState flashState) {
+            // Frames from a previous repeating request may still be in flight.
+            if (!repeatingReportPending || request != repeatingRequest) {
+                return;
+            }
+
+            repeatingReportPending = false;
+
+            notifyCaptureResult(flashState);
+        }
+
+        @Override
+        @NonNull
+        public String toString() {
+            return String.valueOf(session);
+        }
+    }
+}
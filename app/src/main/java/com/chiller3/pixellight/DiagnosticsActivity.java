@@ -0,0 +1,151 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight;
+
+import android.app.Activity;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.chiller3.pixellight.databinding.DiagnosticsActivityBinding;
+
+import java.util.Locale;
+
+/**
+ * Shows how much the torch has cost on this device: this process's CPU time while the torch is
+ * on, how often the camera was opened and captured from, the average time to light, what adaptive
+ * brightness has cost, and the time spent at each brightness level. This refreshes periodically
+ * while visible.
+ */
+public class DiagnosticsActivity extends Activity implements ServiceConnection,
+        TorchSession.DiagnosticsListener {
+    private static final long REFRESH_INTERVAL_MS = 1000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable refresh = this::refresh;
+    private DiagnosticsActivityBinding binding;
+    private TorchService.TorchBinder torchBinder;
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        binding = DiagnosticsActivityBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+
+        final var intent = new Intent(this, TorchService.class);
+        bindService(intent, this, Context.BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        handler.removeCallbacks(refresh);
+        torchBinder = null;
+        unbindService(this);
+    }
+
+    @Override
+    public void onServiceConnected(ComponentName name, IBinder service) {
+        torchBinder = (TorchService.TorchBinder) service;
+        refresh();
+    }
+
+    @Override
+    public void onServiceDisconnected(ComponentName name) {
+        handler.removeCallbacks(refresh);
+        torchBinder = null;
+    }
+
+    private void refresh() {
+        if (torchBinder != null) {
+            torchBinder.requestDiagnostics(this);
+            handler.postDelayed(refresh, REFRESH_INTERVAL_MS);
+        }
+    }
+
+    @Override
+    public void onDiagnostics(@NonNull TorchSession.Diagnostics diagnostics) {
+        final var usage = diagnostics.usage();
+        final var normal = usage.normal();
+        final var lowPower = usage.lowPower();
+        final var captures = diagnostics.captures();
+
+        binding.cpuNormal.setText(getString(R.string.diagnostics_cpu_normal,
+                normal.cpuPercent(), normal.cpuTimeMs(), normal.onTimeMs() / 1000));
+        binding.cpuLowPower.setText(getString(R.string.diagnostics_cpu_low_power,
+                lowPower.cpuPercent(), lowPower.cpuTimeMs(), lowPower.onTimeMs() / 1000));
+
+        binding.cameraOpens.setText(getString(R.string.diagnostics_camera_opens,
+                diagnostics.cameraOpens()));
+        binding.captures.setText(getString(R.string.diagnostics_captures,
+                captures.submitted(), captures.confirmed(), captures.failed()));
+
+        if (diagnostics.timeToLightSamples() > 0) {
+            binding.timeToLight.setText(getString(R.string.diagnostics_time_to_light,
+                    diagnostics.meanTimeToLightMs(), diagnostics.timeToLightSamples()));
+        } else {
+            binding.timeToLight.setText(R.string.diagnostics_time_to_light_none);
+        }
+
+        final var ambient = diagnostics.ambient();
+
+        if (ambient.fifoEvents() >= 0) {
+            binding.adaptiveSensor.setText(getString(R.string.diagnostics_adaptive_sensor,
+                    ambient.activeMs() / 1000, ambient.samples(), ambient.adjustments()));
+            binding.adaptiveCost.setText(getString(R.string.diagnostics_adaptive_cost,
+                    ambient.deliveries(), ambient.deliveriesPerMinute(),
+                    ambient.cpuTimeNs() / 1_000_000.0));
+            binding.adaptiveCost.setVisibility(View.VISIBLE);
+
+            if (ambient.fifoEvents() > 0) {
+                binding.adaptiveBatching.setText(getString(
+                        R.string.diagnostics_adaptive_batching, ambient.fifoEvents()));
+            } else {
+                binding.adaptiveBatching.setText(R.string.diagnostics_adaptive_no_batching);
+            }
+            binding.adaptiveBatching.setVisibility(View.VISIBLE);
+        } else {
+            binding.adaptiveSensor.setText(R.string.diagnostics_adaptive_no_sensor);
+            binding.adaptiveCost.setVisibility(View.GONE);
+            binding.adaptiveBatching.setVisibility(View.GONE);
+        }
+
+        final var onTime = new StringBuilder();
+        final var levelOnTimeMs = usage.levelOnTimeMs();
+
+        for (int level = 1; level < levelOnTimeMs.length; ++level) {
+            if (levelOnTimeMs[level] > 0) {
+                if (onTime.length() > 0) {
+                    onTime.append('\n');
+                }
+                onTime.append(String.format(Locale.getDefault(), "%3d: %.1f s", level,
+                        levelOnTimeMs[level] / 1000.0));
+            }
+        }
+
+        if (onTime.length() > 0) {
+            binding.onTime.setText(onTime);
+        } else {
+            binding.onTime.setText(R.string.diagnostics_on_time_none);
+        }
+    }
+}
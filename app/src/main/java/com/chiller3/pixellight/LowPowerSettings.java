@@ -0,0 +1,110 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight;
+
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Capture settings that minimize the work the ISP does while the torch is on. Nothing reads the
+ * frames, so 3A is off, the sensor frame duration is as long as the lowest advertised AE target
+ * frame rate, and every optional processing stage that can be turned off is. With AE off, the AE
+ * target FPS range is ignored, so only the frame duration slows the sensor down.
+ *
+ * <p>These are applied to the session parameters as well as every capture request so that the
+ * camera never needs to reconfigure the pipeline when switching between brightness levels.
+ *
+ * @param frameDurationNs Frame duration for the lowest advertised AE target frame rate or 0 if
+ *                        unknown
+ * @param noiseReductionOff Whether noise reduction can be turned off
+ * @param edgeOff Whether edge enhancement can be turned off
+ * @param stabilizationOff Whether optical image stabilization can be turned off
+ */
+public record LowPowerSettings(
+        long frameDurationNs,
+        boolean noiseReductionOff,
+        boolean edgeOff,
+        boolean stabilizationOff
+) {
+    @NonNull
+    public static LowPowerSettings fromCharacteristics(
+            @NonNull CameraCharacteristics characteristics) {
+        int minFps = 0;
+
+        final var fpsRanges = characteristics.get(
+                CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if (fpsRanges != null) {
+            for (final var range : fpsRanges) {
+                if (range.getLower() > 0 && (minFps == 0 || range.getLower() < minFps)) {
+                    minFps = range.getLower();
+                }
+            }
+        }
+
+        long frameDurationNs = 0;
+
+        if (minFps > 0) {
+            frameDurationNs = 1_000_000_000L / minFps;
+
+            final var maxFrameDurationNs = characteristics.get(
+                    CameraCharacteristics.SENSOR_INFO_MAX_FRAME_DURATION);
+            if (maxFrameDurationNs != null) {
+                frameDurationNs = Math.min(frameDurationNs, maxFrameDurationNs);
+            }
+        }
+
+        return new LowPowerSettings(
+                frameDurationNs,
+                contains(characteristics.get(
+                        CameraCharacteristics.NOISE_REDUCTION_AVAILABLE_NOISE_REDUCTION_MODES),
+                        CameraMetadata.NOISE_REDUCTION_MODE_OFF),
+                contains(characteristics.get(CameraCharacteristics.EDGE_AVAILABLE_EDGE_MODES),
+                        CameraMetadata.EDGE_MODE_OFF),
+                contains(characteristics.get(
+                        CameraCharacteristics.LENS_INFO_AVAILABLE_OPTICAL_STABILIZATION),
+                        CameraMetadata.LENS_OPTICAL_STABILIZATION_MODE_OFF));
+    }
+
+    private static boolean contains(@Nullable int[] modes, int mode) {
+        if (modes != null) {
+            for (final var m : modes) {
+                if (m == mode) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    public void apply(@NonNull CaptureRequest.Builder builder) {
+        builder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_OFF);
+        builder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_OFF);
+        builder.set(CaptureRequest.CONTROL_AF_MODE, CameraMetadata.CONTROL_AF_MODE_OFF);
+        builder.set(CaptureRequest.CONTROL_AWB_MODE, CameraMetadata.CONTROL_AWB_MODE_OFF);
+        builder.set(CaptureRequest.STATISTICS_FACE_DETECT_MODE,
+                CameraMetadata.STATISTICS_FACE_DETECT_MODE_OFF);
+
+        if (frameDurationNs > 0) {
+            builder.set(CaptureRequest.SENSOR_FRAME_DURATION, frameDurationNs);
+        }
+        if (noiseReductionOff) {
+            builder.set(CaptureRequest.NOISE_REDUCTION_MODE,
+                    CameraMetadata.NOISE_REDUCTION_MODE_OFF);
+        }
+        if (edgeOff) {
+            builder.set(CaptureRequest.EDGE_MODE, CameraMetadata.EDGE_MODE_OFF);
+        }
+        if (stabilizationOff) {
+            builder.set(CaptureRequest.LENS_OPTICAL_STABILIZATION_MODE,
+                    CameraMetadata.LENS_OPTICAL_STABILIZATION_MODE_OFF);
+        }
+    }
+}
@@ -18,10 +18,14 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.CompoundButton;
 import android.widget.SeekBar;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.chiller3.pixellight.core.CaptureCalibrator;
+import com.chiller3.pixellight.core.TorchError;
+
 import com.chiller3.pixellight.databinding.MainActivityBinding;
 
 import java.util.Arrays;
@@ -34,6 +38,24 @@ public class MainActivity extends Activity implements ServiceConnection, TorchSe
     private Preferences prefs;
     private TorchService.TorchBinder torchBinder;
     private boolean initialUpdate = true;
+    private final TorchSession.CalibrationListener calibrationListener =
+            new TorchSession.CalibrationListener() {
+                @Override
+                public void onCalibrationFinished(@NonNull CaptureCalibrator.Result result) {
+                    final var best = result.best();
+                    final var message = best != null
+                            ? getString(R.string.toast_calibration_finished, best.name())
+                            : getString(R.string.toast_calibration_no_strategy);
+
+                    Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show();
+                }
+
+                @Override
+                public void onCalibrationFailed(@NonNull TorchError error) {
+                    Toast.makeText(MainActivity.this, Notifications.getErrorString(error),
+                            Toast.LENGTH_LONG).show();
+                }
+            };
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -59,6 +81,11 @@ public class MainActivity extends Activity implements ServiceConnection, TorchSe
         getMenuInflater().inflate(R.menu.main_activity_options, menu);
 
         menu.findItem(R.id.keep_service_alive).setChecked(prefs.getKeepServiceAlive());
+        menu.findItem(R.id.keep_camera_ready).setChecked(prefs.getWarmStandby());
+        menu.findItem(R.id.low_power_torch).setChecked(prefs.getLowPowerTorch());
+        menu.findItem(R.id.fade_on).setChecked(prefs.getFadeOn());
+        menu.findItem(R.id.fade_off).setChecked(prefs.getFadeOff());
+        menu.findItem(R.id.adaptive_brightness).setChecked(prefs.getAdaptiveBrightness());
 
         return super.onCreateOptionsMenu(menu);
     }
@@ -72,9 +99,51 @@ public class MainActivity extends Activity implements ServiceConnection, TorchSe
             if (!item.isChecked() && torchBinder != null) {
                 // Try to shut down the service so that the user doesn't have to manually turn the
                 // torch on and off for the change to take effect.
+                torchBinder.releaseStandby();
                 torchBinder.tryStopService();
             }
 
+            return true;
+        } else if (item.getItemId() == R.id.keep_camera_ready) {
+            item.setChecked(!item.isChecked());
+            prefs.setWarmStandby(item.isChecked());
+
+            if (!item.isChecked() && torchBinder != null) {
+                torchBinder.releaseStandby();
+            }
+
+            return true;
+        } else if (item.getItemId() == R.id.low_power_torch) {
+            item.setChecked(!item.isChecked());
+            prefs.setLowPowerTorch(item.isChecked());
+
+            if (torchBinder != null) {
+                // The mode is applied when the capture session is created.
+                torchBinder.releaseStandby();
+            }
+
+            return true;
+        } else if (item.getItemId() == R.id.fade_on) {
+            item.setChecked(!item.isChecked());
+            prefs.setFadeOn(item.isChecked());
+            return true;
+        } else if (item.getItemId() == R.id.fade_off) {
+            item.setChecked(!item.isChecked());
+            prefs.setFadeOff(item.isChecked());
+            return true;
+        } else if (item.getItemId() == R.id.adaptive_brightness) {
+            item.setChecked(!item.isChecked());
+            prefs.setAdaptiveBrightness(item.isChecked());
+            return true;
+        } else if (item.getItemId() == R.id.calibrate_capture_strategy) {
+            if (torchBinder != null) {
+                Toast.makeText(this, R.string.toast_calibrating, Toast.LENGTH_SHORT).show();
+                torchBinder.calibrateCaptureStrategy(calibrationListener);
+            }
+
+            return true;
+        } else if (item.getItemId() == R.id.diagnostics) {
+            startActivity(new Intent(this, DiagnosticsActivity.class));
             return true;
         } else {
             return super.onOptionsItemSelected(item);
@@ -123,12 +192,21 @@ public class MainActivity extends Activity implements ServiceConnection, TorchSe
 
         onBinderGone();
         unbindService(this);
+
+        // The process may be killed while in the background.
+        prefs.flush();
     }
 
     @Override
     public void onServiceConnected(ComponentName name, IBinder service) {
         torchBinder = (TorchService.TorchBinder) service;
         torchBinder.registerTorchListener(this);
+
+        // The user is likely about to turn on the torch. We're in the foreground, so the camera
+        // can be opened without the service being in the foreground.
+        if (Permissions.haveRequired(this)) {
+            torchBinder.prewarm(true);
+        }
     }
 
     @Override
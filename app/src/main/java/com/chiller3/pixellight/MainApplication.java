@@ -6,12 +6,27 @@
 package com.chiller3.pixellight;
 
 import android.app.Application;
+import android.util.Log;
 
 public class MainApplication extends Application {
+    /**
+     * Same as {@link com.chiller3.pixellight.core.Log#VERBOSE}, for guarding the app's own
+     * per-command debug messages. This is also a compile-time constant.
+     */
+    public static final boolean VERBOSE = com.chiller3.pixellight.core.Log.VERBOSE;
+
     @Override
     public void onCreate() {
         super.onCreate();
 
+        // Route the core module's logging to logcat.
+        com.chiller3.pixellight.core.Log.setSink((priority, tag, msg, tr) -> {
+            if (tr != null) {
+                msg += '\n' + Log.getStackTraceString(tr);
+            }
+            Log.println(priority, tag, msg);
+        });
+
         new Notifications(this).updateChannels();
     }
 }
@@ -16,6 +16,8 @@ import android.util.Pair;
 import androidx.annotation.NonNull;
 import androidx.annotation.StringRes;
 
+import com.chiller3.pixellight.core.TorchError;
+
 import java.util.Arrays;
 import java.util.List;
 
@@ -86,9 +88,24 @@ public class Notifications {
 
     public void sendErrorNotification(@NonNull TorchError error) {
         final var builder = new Notification.Builder(context, CHANNEL_ID_ERROR);
-        builder.setContentTitle(context.getString(error.toUiString()));
+        builder.setContentTitle(context.getString(getErrorString(error)));
         builder.setSmallIcon(R.drawable.ic_notifications);
 
         notificationManager.notify(ID_ERROR, builder.build());
     }
+
+    static @StringRes int getErrorString(@NonNull TorchError error) {
+        return switch (error) {
+            case NO_PERMISSION -> R.string.notification_error_no_permission;
+            case BLOCKED_BY_POLICY -> R.string.notification_error_blocked_by_policy;
+            case DISCONNECTED -> R.string.notification_error_disconnected;
+            case DEVICE_ERROR -> R.string.notification_error_device_error;
+            case SERVICE_ERROR -> R.string.notification_error_service_error;
+            case SESSION_ERROR -> R.string.notification_error_session_error;
+            case IN_USE -> R.string.notification_error_in_use;
+            case MAXIMUM_IN_USE -> R.string.notification_error_maximum_in_use;
+            case NO_VALID_CAMERA -> R.string.notification_error_no_valid_camera;
+            case UNKNOWN -> R.string.notification_error_unknown;
+        };
+    }
 }
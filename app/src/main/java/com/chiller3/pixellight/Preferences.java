@@ -6,34 +6,130 @@
 package com.chiller3.pixellight;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.preference.PreferenceManager;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-public class Preferences {
-    private static final String PREF_BRIGHTNESS = "brightness";
-    private static final String PREF_KEEP_SERVICE_ALIVE = "keep_service_alive";
+import com.chiller3.pixellight.core.CameraDetails;
+import com.chiller3.pixellight.core.CaptureStrategy;
+import com.chiller3.pixellight.core.TorchStateMachine;
 
-    private final SharedPreferences prefs;
+/** Typed access to the persisted settings. Everything is stored in the {@link StateStore}. */
+public class Preferences implements TorchStateMachine.Settings {
+    /** Duration of the fades that are enabled with {@link #setFadeOn} and {@link #setFadeOff}. */
+    public static final long FADE_DURATION_MS = 600;
+
+    private final StateStore store;
 
     public Preferences(@NonNull Context context) {
-        prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        store = StateStore.get(context);
+    }
+
+    /** Write pending changes to disk right away. See {@link StateStore#flush()}. */
+    public void flush() {
+        store.flush();
     }
 
+    @Override
     public int getBrightness(int defaultValue) {
-        return prefs.getInt(PREF_BRIGHTNESS, defaultValue);
+        return store.getBrightness(defaultValue);
     }
 
+    /** This is cheap enough to call for every slider change. Writes to disk are coalesced. */
     public void setBrightness(int value) {
-        prefs.edit().putInt(PREF_BRIGHTNESS, value).apply();
+        store.setBrightness(value);
     }
 
     public boolean getKeepServiceAlive() {
-        return prefs.getBoolean(PREF_KEEP_SERVICE_ALIVE, false);
+        return store.getFlag(StateStore.FLAG_KEEP_SERVICE_ALIVE);
     }
 
     public void setKeepServiceAlive(boolean keep) {
-        prefs.edit().putBoolean(PREF_KEEP_SERVICE_ALIVE, keep).apply();
+        store.setFlag(StateStore.FLAG_KEEP_SERVICE_ALIVE, keep);
+    }
+
+    /** Only takes effect when {@link #getKeepServiceAlive()} is also enabled. */
+    public boolean getWarmStandby() {
+        return store.getFlag(StateStore.FLAG_WARM_STANDBY);
+    }
+
+    public void setWarmStandby(boolean enabled) {
+        store.setFlag(StateStore.FLAG_WARM_STANDBY, enabled);
+    }
+
+    /** Takes effect the next time a capture session is created. */
+    public boolean getLowPowerTorch() {
+        return store.getFlag(StateStore.FLAG_LOW_POWER_TORCH);
+    }
+
+    public void setLowPowerTorch(boolean enabled) {
+        store.setFlag(StateStore.FLAG_LOW_POWER_TORCH, enabled);
+    }
+
+    /** Whether the tile, the notification, and external intents fade the torch on. */
+    public boolean getFadeOn() {
+        return store.getFlag(StateStore.FLAG_FADE_ON);
+    }
+
+    public void setFadeOn(boolean enabled) {
+        store.setFlag(StateStore.FLAG_FADE_ON, enabled);
+    }
+
+    /** Whether the tile, the notification, and external intents fade the torch off. */
+    public boolean getFadeOff() {
+        return store.getFlag(StateStore.FLAG_FADE_OFF);
+    }
+
+    public void setFadeOff(boolean enabled) {
+        store.setFlag(StateStore.FLAG_FADE_OFF, enabled);
+    }
+
+    /**
+     * Whether the brightness follows the ambient light while the torch is on, with the saved
+     * brightness as the ceiling. Takes effect the next time the torch turns on.
+     */
+    public boolean getAdaptiveBrightness() {
+        return store.getFlag(StateStore.FLAG_ADAPTIVE_BRIGHTNESS);
+    }
+
+    public void setAdaptiveBrightness(boolean enabled) {
+        store.setFlag(StateStore.FLAG_ADAPTIVE_BRIGHTNESS, enabled);
+    }
+
+    @Override
+    public long getFadeDurationMs(boolean on) {
+        return (on ? getFadeOn() : getFadeOff()) ? FADE_DURATION_MS : 0;
+    }
+
+    @Override
+    public boolean isWarmStandbyEnabled() {
+        return getKeepServiceAlive() && getWarmStandby();
+    }
+
+    /**
+     * Get the calibrated capture strategy if it was measured on the same OS build. Otherwise, a
+     * single capture per brightness change is used.
+     */
+    @Override
+    @NonNull
+    public CaptureStrategy getCaptureStrategy() {
+        final var strategy = store.getCaptureStrategy();
+        return strategy != null ? strategy : CaptureStrategy.SINGLE;
+    }
+
+    public void setCaptureStrategy(@Nullable CaptureStrategy strategy) {
+        store.setCaptureStrategy(strategy);
+    }
+
+    /** Get the cached camera details if they were saved on the same OS build. */
+    @Override
+    @Nullable
+    public CameraDetails getCameraDetails() {
+        return store.getCameraDetails();
+    }
+
+    @Override
+    public void setCameraDetails(@Nullable CameraDetails details) {
+        store.setCameraDetails(details);
     }
 }
@@ -0,0 +1,50 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight;
+
+import android.os.Process;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import com.chiller3.pixellight.core.CaptureCalibrator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads the user and system CPU time of this process from {@code /proc/self/stat}. If that fails,
+ * {@link Process#getElapsedCpuTime()} is used instead, which has only millisecond precision.
+ */
+public class ProcStatCpuClock implements CaptureCalibrator.CpuClock {
+    private static final String TAG = ProcStatCpuClock.class.getSimpleName();
+
+    private static final Path STAT_PATH = Path.of("/proc/self/stat");
+    // Fields after the parenthesized command name, which may contain spaces. utime and stime are
+    // fields 14 and 15 of the whole line.
+    private static final int UTIME_INDEX = 11;
+    private static final int STIME_INDEX = 12;
+
+    private final long nsPerTick = 1_000_000_000L / Os.sysconf(OsConstants._SC_CLK_TCK);
+
+    @WorkerThread
+    @Override
+    public long cpuTimeNs() {
+        try {
+            final var stat = Files.readString(STAT_PATH);
+            final var fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+
+            return (Long.parseLong(fields[UTIME_INDEX]) + Long.parseLong(fields[STIME_INDEX]))
+                    * nsPerTick;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Failed to read " + STAT_PATH, e);
+            return Process.getElapsedCpuTime() * 1_000_000;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight;
+
+import android.app.Service;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.chiller3.pixellight.core.LightPattern;
+import com.chiller3.pixellight.core.TorchError;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Exported {@link Messenger} interface for controlling the torch from other apps without launching
+ * {@link ToggleActivity} for every command. Clients must hold the
+ * {@code <application ID>.permission.CONTROL_TORCH} permission.
+ *
+ * <p>Commands are only accepted while {@link TorchService} is already in the foreground because a
+ * bound service cannot bring it into the foreground from the background. Otherwise, the client is
+ * sent {@link #ERROR_NOT_IN_FOREGROUND} and should launch {@link ToggleActivity} instead. That
+ * starts the service, after which the commands here work.
+ *
+ * <p>See the external control section of the README for the protocol. This is exported. Do not
+ * rename anything.
+ */
+public class RemoteControlService extends Service implements ServiceConnection,
+        TorchSession.Listener {
+    private static final String TAG = RemoteControlService.class.getSimpleName();
+
+    /**
+     * Set the brightness to {@link Message#arg1}. Same values as {@link ToggleActivity}. The
+     * change fades over {@link Message#arg2} milliseconds. -1 uses the fade settings.
+     */
+    public static final int MSG_SET_BRIGHTNESS = 1;
+    /**
+     * Set the brightness to each value of the int array {@link #KEY_BRIGHTNESS} in order.
+     * Intermediate values that have not taken effect yet by the time the next one arrives are
+     * skipped.
+     */
+    public static final int MSG_SET_BRIGHTNESS_BATCH = 2;
+    /** Send torch state changes to {@link Message#replyTo}, starting with the current state. */
+    public static final int MSG_SUBSCRIBE = 3;
+    /** Stop sending torch state changes to {@link Message#replyTo}. */
+    public static final int MSG_UNSUBSCRIBE = 4;
+    /**
+     * Play the pattern in the string {@link #KEY_PATTERN}. It loops until the next brightness
+     * change if {@link Message#arg1} is 1 and plays once if it is 0.
+     */
+    public static final int MSG_PLAY_PATTERN = 5;
+
+    /** Current brightness in {@link Message#arg1} and max brightness in {@link Message#arg2}. */
+    public static final int MSG_TORCH_STATE = 100;
+    /** Error name in the string {@link #KEY_ERROR}. */
+    public static final int MSG_ERROR = 101;
+
+    public static final String KEY_BRIGHTNESS = "brightness";
+    public static final String KEY_ERROR = "error";
+    public static final String KEY_PATTERN = "pattern";
+
+    /** The service is not in the foreground. Use {@link ToggleActivity} instead. */
+    public static final String ERROR_NOT_IN_FOREGROUND = "NOT_IN_FOREGROUND";
+    /** A brightness value or fade duration was not valid. The rest of the message was ignored. */
+    public static final String ERROR_INVALID_BRIGHTNESS = "INVALID_BRIGHTNESS";
+    /** The pattern was not valid. */
+    public static final String ERROR_INVALID_PATTERN = "INVALID_PATTERN";
+    /** The message type is not known. */
+    public static final String ERROR_INVALID_MESSAGE = "INVALID_MESSAGE";
+
+    private final Handler handler = new Handler(Looper.getMainLooper(), this::handleMessage);
+    private final Messenger messenger = new Messenger(handler);
+    private final HashSet<Messenger> subscribers = new HashSet<>();
+    // Messages received before the connection to TorchService was established.
+    private final ArrayList<Runnable> pending = new ArrayList<>();
+    private TorchService.TorchBinder torchBinder;
+    private int curBrightness = -1;
+    private int maxBrightness = -1;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Log.d(TAG, "Creating service");
+
+        final var intent = new Intent(this, TorchService.class);
+        bindService(intent, this, Context.BIND_AUTO_CREATE);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        Log.d(TAG, "Destroying service");
+
+        onBinderGone();
+        unbindService(this);
+    }
+
+    @Override
+    @Nullable
+    public IBinder onBind(Intent intent) {
+        return messenger.getBinder();
+    }
+
+    @Override
+    public void onServiceConnected(ComponentName name, IBinder service) {
+        torchBinder = (TorchService.TorchBinder) service;
+        torchBinder.registerTorchListener(this);
+
+        for (final var runnable : pending) {
+            runnable.run();
+        }
+        pending.clear();
+    }
+
+    @Override
+    public void onServiceDisconnected(ComponentName name) {
+        onBinderGone();
+    }
+
+    private void onBinderGone() {
+        if (torchBinder != null) {
+            torchBinder.unregisterTorchListener(this);
+        }
+
+        torchBinder = null;
+    }
+
+    @MainThread
+    private boolean handleMessage(@NonNull Message msg) {
+        // The message is recycled after this returns.
+        final var what = msg.what;
+        final var arg1 = msg.arg1;
+        final var arg2 = msg.arg2;
+        final var data = msg.peekData();
+        final var replyTo = msg.replyTo;
+        final Runnable runnable = () -> handleMessage(what, arg1, arg2, data, replyTo);
+
+        if (torchBinder == null) {
+            pending.add(runnable);
+        } else {
+            runnable.run();
+        }
+
+        return true;
+    }
+
+    @MainThread
+    private void handleMessage(int what, int arg1, int arg2, @Nullable Bundle data,
+                               @Nullable Messenger replyTo) {
+        switch (what) {
+            case MSG_SET_BRIGHTNESS -> setBrightness(new int[] { arg1 }, arg2, replyTo);
+            case MSG_SET_BRIGHTNESS_BATCH -> {
+                final var values = data != null ? data.getIntArray(KEY_BRIGHTNESS) : null;
+                if (values == null) {
+                    sendError(replyTo, ERROR_INVALID_MESSAGE);
+                } else {
+                    setBrightness(values, 0, replyTo);
+                }
+            }
+            case MSG_PLAY_PATTERN -> {
+                final var pattern = data != null ? data.getString(KEY_PATTERN) : null;
+                if (pattern == null) {
+                    sendError(replyTo, ERROR_INVALID_MESSAGE);
+                } else {
+                    playPattern(pattern, arg1 != 0, replyTo);
+                }
+            }
+            case MSG_SUBSCRIBE -> {
+                if (replyTo == null) {
+                    sendError(null, ERROR_INVALID_MESSAGE);
+                } else if (subscribers.add(replyTo) && maxBrightness >= 0) {
+                    sendState(replyTo);
+                }
+            }
+            case MSG_UNSUBSCRIBE -> {
+                if (replyTo != null) {
+                    subscribers.remove(replyTo);
+                }
+            }
+            default -> {
+                Log.w(TAG, "Invalid message: " + what);
+                sendError(replyTo, ERROR_INVALID_MESSAGE);
+            }
+        }
+    }
+
+    @MainThread
+    private void setBrightness(@NonNull int[] values, long fadeMs,
+                               @Nullable Messenger replyTo) {
+        if (!torchBinder.isInForeground()) {
+            sendError(replyTo, ERROR_NOT_IN_FOREGROUND);
+            return;
+        } else if (fadeMs < TorchSession.FADE_DEFAULT) {
+            sendError(replyTo, ERROR_INVALID_BRIGHTNESS);
+            return;
+        }
+
+        for (final var value : values) {
+            if (value < TorchSession.BRIGHTNESS_TOGGLE) {
+                sendError(replyTo, ERROR_INVALID_BRIGHTNESS);
+                return;
+            }
+        }
+
+        // Only the last value in a batch is worth measuring.
+        for (int i = 0; i < values.length - 1; ++i) {
+            torchBinder.setTorchBrightness(values[i]);
+        }
+        if (values.length > 0) {
+            final var request = TapLatencyTracker.Request.start(
+                    TapLatencyTracker.EntryPoint.EXTERNAL);
+            torchBinder.setTorchBrightness(values[values.length - 1], fadeMs, request);
+        }
+    }
+
+    @MainThread
+    private void playPattern(@NonNull String spec, boolean repeat, @Nullable Messenger replyTo) {
+        if (!torchBinder.isInForeground()) {
+            sendError(replyTo, ERROR_NOT_IN_FOREGROUND);
+            return;
+        }
+
+        final LightPattern pattern;
+        try {
+            pattern = LightPattern.parse(spec, repeat);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Invalid pattern: " + spec, e);
+            sendError(replyTo, ERROR_INVALID_PATTERN);
+            return;
+        }
+
+        torchBinder.startPattern(pattern);
+    }
+
+    /** Send {@code msg} to {@code messenger}. Returns false if the client is gone. */
+    private static boolean send(@NonNull Messenger messenger, @NonNull Message msg) {
+        try {
+            messenger.send(msg);
+            return true;
+        } catch (RemoteException e) {
+            Log.w(TAG, "Failed to send message to client", e);
+            return false;
+        }
+    }
+
+    private void sendError(@Nullable Messenger replyTo, @NonNull String error) {
+        if (replyTo == null) {
+            Log.w(TAG, "Not reporting error to anonymous client: " + error);
+            return;
+        }
+
+        final var msg = Message.obtain(null, MSG_ERROR);
+        final var data = new Bundle();
+        data.putString(KEY_ERROR, error);
+        msg.setData(data);
+
+        if (!send(replyTo, msg)) {
+            subscribers.remove(replyTo);
+        }
+    }
+
+    private boolean sendState(@NonNull Messenger messenger) {
+        return send(messenger, Message.obtain(null, MSG_TORCH_STATE, curBrightness,
+                maxBrightness));
+    }
+
+    @Override
+    public void onTorchStateChanged(int curBrightness, int maxBrightness) {
+        this.curBrightness = curBrightness;
+        this.maxBrightness = maxBrightness;
+
+        subscribers.removeIf(subscriber -> !sendState(subscriber));
+    }
+
+    @Override
+    public void onTorchError(@NonNull TorchError error) {
+        for (final var subscriber : new ArrayList<>(subscribers)) {
+            sendError(subscriber, error.name());
+        }
+    }
+}
@@ -0,0 +1,407 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.chiller3.pixellight.core.CameraDetails;
+import com.chiller3.pixellight.core.CaptureStrategy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Process-wide store for all persisted state in a small fixed-layout binary file. The whole file
+ * is read with a single small read the first time it is needed, which takes microseconds instead
+ * of parsing an XML file.
+ *
+ * <p>Changes only update the in-memory copy. The file is rewritten on a background thread once
+ * there have been no further changes for {@link #WRITE_DELAY_MS}, so dragging the brightness
+ * slider costs a single write. {@link #flush()} writes pending changes right away for when the
+ * process might be killed. Writes go to a temporary file that atomically replaces the old one
+ * and the contents are checksummed, so a torn write never results in garbage.
+ *
+ * <p>The values from the old {@code SharedPreferences} file are migrated the first time the store
+ * is loaded and the old file is deleted afterwards.
+ */
+public final class StateStore {
+    private static final String TAG = StateStore.class.getSimpleName();
+
+    private static final String FILE_NAME = "state.bin";
+    private static final String TEMP_FILE_NAME = FILE_NAME + ".tmp";
+
+    private static final long WRITE_DELAY_MS = 500;
+
+    public static final int FLAG_KEEP_SERVICE_ALIVE = 1;
+    public static final int FLAG_WARM_STANDBY = 1 << 1;
+    public static final int FLAG_LOW_POWER_TORCH = 1 << 2;
+    private static final int FLAG_HAS_BRIGHTNESS = 1 << 3;
+    public static final int FLAG_FADE_ON = 1 << 4;
+    public static final int FLAG_FADE_OFF = 1 << 5;
+    public static final int FLAG_ADAPTIVE_BRIGHTNESS = 1 << 6;
+
+    // File layout. All values are big endian. The checksum is a CRC32 of everything before it.
+    private static final int MAGIC = 0x504c5354; // PLST
+    private static final int VERSION = 1;
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_FLAGS = 8;
+    private static final int OFFSET_BRIGHTNESS = 12;
+    private static final int OFFSET_STRATEGY_FINGERPRINT = 16;
+    private static final int OFFSET_STRATEGY = 24;
+    private static final int OFFSET_CAMERA_FINGERPRINT = 28;
+    private static final int OFFSET_CAMERA_MAX_BRIGHTNESS = 36;
+    private static final int OFFSET_CAMERA_MAX_TORCH_STRENGTH = 40;
+    private static final int OFFSET_CAMERA_ID_LENGTH = 44;
+    private static final int OFFSET_CAMERA_ID = 45;
+    private static final int MAX_CAMERA_ID_LENGTH = 32;
+    private static final int OFFSET_CHECKSUM = 92;
+    private static final int SIZE = 96;
+
+    // Keys from the old SharedPreferences file. Everything else was never stored there by a
+    // released version.
+    private static final String LEGACY_BRIGHTNESS = "brightness";
+    private static final String LEGACY_KEEP_SERVICE_ALIVE = "keep_service_alive";
+
+    private static final long BUILD_FINGERPRINT = hashFingerprint(Build.FINGERPRINT);
+
+    private static StateStore instance;
+
+    private final Path path;
+    private final Path tempPath;
+    private final Runnable writeRunnable = this::writeScheduled;
+    // Only exists while a write is scheduled. Guarded by this.
+    private Handler writeHandler;
+    // Serializes writes to the temporary file.
+    private final Object writeLock = new Object();
+
+    // Everything below is guarded by this.
+    private int flags = 0;
+    private int brightness = 0;
+    // Hash of the OS build fingerprint that each cached value is for or 0 if there is none.
+    private long strategyFingerprint = 0;
+    private int strategy = 0;
+    private long cameraFingerprint = 0;
+    private String cameraId = "";
+    private int cameraMaxBrightness = 0;
+    private int cameraMaxTorchStrength = 0;
+
+    @AnyThread
+    @NonNull
+    public static synchronized StateStore get(@NonNull Context context) {
+        if (instance == null) {
+            instance = new StateStore(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    private StateStore(@NonNull Context context) {
+        final var dir = context.getFilesDir().toPath();
+        path = dir.resolve(FILE_NAME);
+        tempPath = dir.resolve(TEMP_FILE_NAME);
+
+        if (!load()) {
+            migrate(context);
+        }
+    }
+
+    /** 64-bit FNV-1a hash of an OS build fingerprint. This is never 0. */
+    private static long hashFingerprint(@Nullable String fingerprint) {
+        if (fingerprint == null) {
+            return 0;
+        }
+
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < fingerprint.length(); ++i) {
+            hash ^= fingerprint.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash != 0 ? hash : 1;
+    }
+
+    private static int checksum(@NonNull ByteBuffer buf) {
+        final var crc = new CRC32();
+        crc.update(buf.array(), 0, OFFSET_CHECKSUM);
+        return (int) crc.getValue();
+    }
+
+    /** @return Whether the file existed and was valid */
+    private synchronized boolean load() {
+        final byte[] data;
+
+        try {
+            data = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + path, e);
+            return false;
+        }
+
+        final var buf = ByteBuffer.wrap(data);
+
+        if (data.length != SIZE || buf.getInt(OFFSET_MAGIC) != MAGIC
+                || buf.getInt(OFFSET_VERSION) != VERSION
+                || buf.getInt(OFFSET_CHECKSUM) != checksum(buf)) {
+            Log.w(TAG, "Ignoring invalid " + path);
+            return false;
+        }
+
+        final var cameraIdLength = Math.min(buf.get(OFFSET_CAMERA_ID_LENGTH) & 0xff,
+                MAX_CAMERA_ID_LENGTH);
+
+        flags = buf.getInt(OFFSET_FLAGS);
+        brightness = buf.getInt(OFFSET_BRIGHTNESS);
+        strategyFingerprint = buf.getLong(OFFSET_STRATEGY_FINGERPRINT);
+        strategy = buf.getInt(OFFSET_STRATEGY);
+        cameraFingerprint = buf.getLong(OFFSET_CAMERA_FINGERPRINT);
+        cameraMaxBrightness = buf.getInt(OFFSET_CAMERA_MAX_BRIGHTNESS);
+        cameraMaxTorchStrength = buf.getInt(OFFSET_CAMERA_MAX_TORCH_STRENGTH);
+        cameraId = new String(data, OFFSET_CAMERA_ID, cameraIdLength, StandardCharsets.UTF_8);
+
+        return true;
+    }
+
+    /** Import the values from the old SharedPreferences file if there is one. */
+    @SuppressWarnings("deprecation")
+    private synchronized void migrate(@NonNull Context context) {
+        final var legacyName = context.getPackageName() + "_preferences";
+        final var legacyFile = new File(context.getDataDir(), "shared_prefs/" + legacyName + ".xml");
+
+        // Avoid loading the SharedPreferences machinery at all on fresh installs.
+        if (!legacyFile.exists()) {
+            return;
+        }
+
+        Log.i(TAG, "Migrating " + legacyFile);
+
+        final var prefs = PreferenceManager.getDefaultSharedPreferences(context);
+
+        if (prefs.contains(LEGACY_BRIGHTNESS)) {
+            flags |= FLAG_HAS_BRIGHTNESS;
+            brightness = prefs.getInt(LEGACY_BRIGHTNESS, 0);
+        }
+        if (prefs.getBoolean(LEGACY_KEEP_SERVICE_ALIVE, false)) {
+            flags |= FLAG_KEEP_SERVICE_ALIVE;
+        }
+
+        // Only delete the old file once the new one is safely on disk.
+        if (write()) {
+            context.deleteSharedPreferences(legacyName);
+        }
+    }
+
+    private static boolean fitsCameraId(@NonNull String cameraId) {
+        return cameraId.getBytes(StandardCharsets.UTF_8).length <= MAX_CAMERA_ID_LENGTH;
+    }
+
+    /** Schedule a write, replacing any that is already scheduled. */
+    private synchronized void scheduleWrite() {
+        if (writeHandler == null) {
+            final var thread = new HandlerThread(TAG);
+            thread.start();
+            writeHandler = new Handler(thread.getLooper());
+        }
+
+        writeHandler.removeCallbacks(writeRunnable);
+        writeHandler.postDelayed(writeRunnable, WRITE_DELAY_MS);
+    }
+
+    /** Write the file and stop the writer thread unless another write was scheduled meanwhile. */
+    @WorkerThread
+    private void writeScheduled() {
+        write();
+
+        synchronized (this) {
+            // flush() may have already taken over and stopped this thread.
+            if (writeHandler != null && writeHandler.getLooper() == Looper.myLooper()
+                    && !writeHandler.hasCallbacks(writeRunnable)) {
+                writeHandler.getLooper().quitSafely();
+                writeHandler = null;
+            }
+        }
+    }
+
+    /**
+     * Write any scheduled changes right away instead of waiting for {@link #WRITE_DELAY_MS}. This
+     * blocks until the file is on disk and is meant for when the process may be killed soon.
+     */
+    @AnyThread
+    public void flush() {
+        synchronized (this) {
+            if (writeHandler == null || !writeHandler.hasCallbacks(writeRunnable)) {
+                return;
+            }
+
+            writeHandler.removeCallbacks(writeRunnable);
+            writeHandler.getLooper().quitSafely();
+            writeHandler = null;
+        }
+
+        write();
+    }
+
+    @NonNull
+    private synchronized ByteBuffer serialize() {
+        final var buf = ByteBuffer.allocate(SIZE);
+        final var cameraIdBytes = cameraId.getBytes(StandardCharsets.UTF_8);
+
+        buf.putInt(OFFSET_MAGIC, MAGIC);
+        buf.putInt(OFFSET_VERSION, VERSION);
+        buf.putInt(OFFSET_FLAGS, flags);
+        buf.putInt(OFFSET_BRIGHTNESS, brightness);
+        buf.putLong(OFFSET_STRATEGY_FINGERPRINT, strategyFingerprint);
+        buf.putInt(OFFSET_STRATEGY, strategy);
+        buf.putLong(OFFSET_CAMERA_FINGERPRINT, cameraFingerprint);
+        buf.putInt(OFFSET_CAMERA_MAX_BRIGHTNESS, cameraMaxBrightness);
+        buf.putInt(OFFSET_CAMERA_MAX_TORCH_STRENGTH, cameraMaxTorchStrength);
+        buf.put(OFFSET_CAMERA_ID_LENGTH, (byte) cameraIdBytes.length);
+        buf.put(OFFSET_CAMERA_ID, cameraIdBytes);
+        buf.putInt(OFFSET_CHECKSUM, checksum(buf));
+
+        return buf;
+    }
+
+    /** @return Whether the file was written successfully */
+    @WorkerThread
+    private boolean write() {
+        synchronized (writeLock) {
+            return writeLocked();
+        }
+    }
+
+    @WorkerThread
+    private boolean writeLocked() {
+        final var buf = serialize();
+
+        try (var channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + tempPath, e);
+            return false;
+        }
+
+        try {
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to replace " + path, e);
+            return false;
+        }
+
+        return true;
+    }
+
+    @AnyThread
+    public synchronized int getBrightness(int defaultValue) {
+        return (flags & FLAG_HAS_BRIGHTNESS) != 0 ? brightness : defaultValue;
+    }
+
+    @AnyThread
+    public synchronized void setBrightness(int value) {
+        if ((flags & FLAG_HAS_BRIGHTNESS) == 0 || brightness != value) {
+            flags |= FLAG_HAS_BRIGHTNESS;
+            brightness = value;
+            scheduleWrite();
+        }
+    }
+
+    @AnyThread
+    public synchronized boolean getFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    @AnyThread
+    public synchronized void setFlag(int flag, boolean value) {
+        final var newFlags = value ? flags | flag : flags & ~flag;
+
+        if (newFlags != flags) {
+            flags = newFlags;
+            scheduleWrite();
+        }
+    }
+
+    /** Get the capture strategy if it was saved on the same OS build. */
+    @AnyThread
+    @Nullable
+    public synchronized CaptureStrategy getCaptureStrategy() {
+        final var strategies = CaptureStrategy.values();
+
+        if (strategyFingerprint != BUILD_FINGERPRINT || strategy < 0
+                || strategy >= strategies.length) {
+            return null;
+        }
+
+        return strategies[strategy];
+    }
+
+    @AnyThread
+    public synchronized void setCaptureStrategy(@Nullable CaptureStrategy strategy) {
+        if (strategy == null) {
+            strategyFingerprint = 0;
+            this.strategy = 0;
+        } else {
+            strategyFingerprint = BUILD_FINGERPRINT;
+            this.strategy = strategy.ordinal();
+        }
+
+        scheduleWrite();
+    }
+
+    /** Get the cached camera details if they were saved on the same OS build. */
+    @AnyThread
+    @Nullable
+    public synchronized CameraDetails getCameraDetails() {
+        if (cameraFingerprint != BUILD_FINGERPRINT) {
+            return null;
+        }
+
+        return new CameraDetails(cameraId, cameraMaxBrightness, cameraMaxTorchStrength);
+    }
+
+    @AnyThread
+    public synchronized void setCameraDetails(@Nullable CameraDetails details) {
+        if (details == null || !fitsCameraId(details.cameraId())) {
+            cameraFingerprint = 0;
+            cameraId = "";
+            cameraMaxBrightness = 0;
+            cameraMaxTorchStrength = 0;
+        } else {
+            cameraFingerprint = BUILD_FINGERPRINT;
+            cameraId = details.cameraId();
+            cameraMaxBrightness = details.maxBrightness();
+            cameraMaxTorchStrength = details.maxTorchStrength();
+        }
+
+        scheduleWrite();
+    }
+}
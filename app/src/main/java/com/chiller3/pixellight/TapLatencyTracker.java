@@ -0,0 +1,213 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight;
+
+import android.content.Intent;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import com.chiller3.pixellight.core.LatencyHistogram;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the time from the user asking for the torch to turn on until it is reported to be on
+ * by the state machine, separately for each way of controlling the torch. Every request is also an
+ * async trace section with its own cookie, so the whole chain from the tap to the completed
+ * capture can be followed in a system trace.
+ *
+ * <p>A request is finished by the first state change reported after its command was applied. Only
+ * requests that turn the torch on are measured, so the first step of a fade-off, which still
+ * reports the torch as on, doesn't count. Requests that never cause a state change, like turning
+ * off a torch that is already off, are dropped after {@link #TIMEOUT_NS}.
+ */
+public class TapLatencyTracker {
+    public enum EntryPoint {
+        /** Quick settings tile, either directly or through {@link ToggleActivity}. */
+        TILE,
+        /** {@link ToggleActivity} launched through its intent filter, like the note shortcut. */
+        ACTIVITY,
+        /** Action button in the persistent notification. */
+        NOTIFICATION,
+        /** {@link ToggleActivity} launched explicitly by another app. */
+        EXTERNAL,
+    }
+
+    public static final String TRACE_TAP_TO_LIGHT = "tapToLight";
+
+    private static final String EXTRA_ENTRY_POINT = "latency_entry_point";
+    private static final String EXTRA_START_TIME = "latency_start_time";
+    private static final String EXTRA_COOKIE = "latency_cookie";
+
+    private static final long TIMEOUT_NS = 10_000_000_000L;
+
+    private static final AtomicInteger nextCookie = new AtomicInteger();
+
+    /**
+     * A single user request.
+     *
+     * @param startTimeNs {@link SystemClock#elapsedRealtimeNanos()} when the request was made
+     * @param cookie Cookie of the {@link #TRACE_TAP_TO_LIGHT} async trace section
+     */
+    public record Request(@NonNull EntryPoint entryPoint, long startTimeNs, int cookie) {
+        /** Start a new request now and begin its async trace section. */
+        @AnyThread
+        @NonNull
+        public static Request start(@NonNull EntryPoint entryPoint) {
+            final var request = new Request(entryPoint, SystemClock.elapsedRealtimeNanos(),
+                    nextCookie.incrementAndGet());
+            Trace.beginAsyncSection(TRACE_TAP_TO_LIGHT, request.cookie);
+            return request;
+        }
+
+        /**
+         * Get the request that was passed along with {@code intent} or start a new one if there
+         * is none. A new request uses the entry point that {@code intent} was tagged with, if any.
+         */
+        @AnyThread
+        @NonNull
+        public static Request fromIntent(@NonNull Intent intent,
+                                         @NonNull EntryPoint defaultEntryPoint) {
+            var entryPoint = defaultEntryPoint;
+
+            final var name = intent.getStringExtra(EXTRA_ENTRY_POINT);
+            if (name != null) {
+                try {
+                    entryPoint = EntryPoint.valueOf(name);
+                } catch (IllegalArgumentException e) {
+                    // Keep the default.
+                }
+            }
+
+            if (intent.hasExtra(EXTRA_START_TIME) && intent.hasExtra(EXTRA_COOKIE)) {
+                return new Request(entryPoint, intent.getLongExtra(EXTRA_START_TIME, 0),
+                        intent.getIntExtra(EXTRA_COOKIE, 0));
+            }
+
+            return start(entryPoint);
+        }
+
+        /** Pass this request along with {@code intent}. */
+        @AnyThread
+        public void putExtras(@NonNull Intent intent) {
+            intent.putExtra(EXTRA_ENTRY_POINT, entryPoint.name());
+            intent.putExtra(EXTRA_START_TIME, startTimeNs);
+            intent.putExtra(EXTRA_COOKIE, cookie);
+        }
+    }
+
+    /**
+     * Tag {@code intent} with an entry point, but no start time. This is for intents that are
+     * created long before they are used, like the ones for notification actions. The request
+     * starts when the intent is received instead.
+     */
+    @AnyThread
+    public static void putEntryPoint(@NonNull Intent intent, @NonNull EntryPoint entryPoint) {
+        intent.putExtra(EXTRA_ENTRY_POINT, entryPoint.name());
+    }
+
+    private record Pending(@NonNull Request request, long commandSeq) {}
+
+    private final EnumMap<EntryPoint, LatencyHistogram> histograms =
+            new EnumMap<>(EntryPoint.class);
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private long timeouts = 0;
+    private boolean lastOn = false;
+
+    public TapLatencyTracker() {
+        for (final var entryPoint : EntryPoint.values()) {
+            histograms.put(entryPoint, new LatencyHistogram());
+        }
+    }
+
+    /** Start waiting for the state change caused by command {@code seq}. */
+    @MainThread
+    public void onCommandSubmitted(@NonNull Request request, long seq) {
+        if (seq < 0) {
+            Trace.endAsyncSection(TRACE_TAP_TO_LIGHT, request.cookie());
+            return;
+        }
+
+        pending.add(new Pending(request, seq));
+    }
+
+    /**
+     * Finish every request whose command was applied before the state change.
+     *
+     * @param appliedSeq Sequence number of the last command applied when the state changed
+     * @param on Whether the torch is on after the state change
+     */
+    @MainThread
+    public void onTorchStateChanged(long appliedSeq, boolean on) {
+        final var now = SystemClock.elapsedRealtimeNanos();
+        final var turnedOn = on && !lastOn;
+        lastOn = on;
+
+        while (!pending.isEmpty()) {
+            final var item = pending.peek();
+            final var request = item.request();
+            final var elapsedNs = now - request.startTimeNs();
+
+            if (elapsedNs > TIMEOUT_NS) {
+                ++timeouts;
+            } else if (item.commandSeq() <= appliedSeq) {
+                if (turnedOn) {
+                    histograms.get(request.entryPoint()).record(elapsedNs / 1000);
+                }
+            } else {
+                // Commands are applied in order.
+                break;
+            }
+
+            pending.remove();
+            Trace.endAsyncSection(TRACE_TAP_TO_LIGHT, request.cookie());
+        }
+    }
+
+    /** Get the number of measured requests across all entry points. */
+    @MainThread
+    public long getCount() {
+        long count = 0;
+
+        for (final var histogram : histograms.values()) {
+            count += histogram.getCount();
+        }
+
+        return count;
+    }
+
+    /** Get the mean latency across all entry points or 0 if nothing was measured. */
+    @MainThread
+    public double getMeanMs() {
+        long count = 0;
+        long totalUs = 0;
+
+        for (final var histogram : histograms.values()) {
+            count += histogram.getCount();
+            totalUs += histogram.getTotalUs();
+        }
+
+        return count > 0 ? totalUs / 1000.0 / count : 0.0;
+    }
+
+    @MainThread
+    public void dump(@NonNull PrintWriter writer) {
+        writer.println("Tap-to-light latency:");
+
+        for (final var entry : histograms.entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue());
+        }
+
+        writer.println("  Pending: " + pending.size() + ", timed out: " + timeouts);
+    }
+}
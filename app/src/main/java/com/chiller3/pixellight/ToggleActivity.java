@@ -9,18 +9,34 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Trace;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.chiller3.pixellight.core.LightPattern;
+
 /**
  * This is an exported activity for toggling the torch state or changing the brightness. This also
  * allows the quick settings tile to launch the while-in-use foreground service, which is no longer
  * possible from the tile's context in Android 15.
+ *
+ * <p>The brightness change fades according to the fade settings unless a fade duration in
+ * milliseconds is specified. If a pattern is specified, it is played instead of changing the
+ * brightness.
  */
 public class ToggleActivity extends Activity {
+    private static final String TAG = ToggleActivity.class.getSimpleName();
+
     /** This is exported. Do not rename. */
     private static final String EXTRA_BRIGHTNESS = "brightness";
+    /** This is exported. Do not rename. */
+    private static final String EXTRA_FADE_MS = "fade_ms";
+    /** This is exported. Do not rename. */
+    private static final String EXTRA_PATTERN = "pattern";
+    /** This is exported. Do not rename. */
+    private static final String EXTRA_REPEAT = "repeat";
 
     public static @NonNull Intent createIntent(@NonNull Context context, int brightness) {
         final var intent = new Intent(context, ToggleActivity.class);
@@ -30,12 +46,70 @@ public class ToggleActivity extends Activity {
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
+        Trace.beginSection("ToggleActivity.onCreate");
+
+        try {
+            super.onCreate(savedInstanceState);
+
+            final var intent = getIntent();
+            // The tile passes along its own request. Anything else is either the intent filter,
+            // like the lock screen note shortcut, or another app launching us explicitly.
+            final var request = TapLatencyTracker.Request.fromIntent(intent,
+                    Intent.ACTION_CREATE_NOTE.equals(intent.getAction())
+                            ? TapLatencyTracker.EntryPoint.ACTIVITY
+                            : TapLatencyTracker.EntryPoint.EXTERNAL);
+
+            final var pattern = intent.getStringExtra(EXTRA_PATTERN);
+            final Intent serviceIntent;
+
+            if (pattern != null) {
+                final var repeat = intent.getBooleanExtra(EXTRA_REPEAT, true);
+
+                // Don't start the service just for it to reject the pattern.
+                try {
+                    LightPattern.parse(pattern, repeat);
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Invalid pattern: " + pattern, e);
+                    finish();
+                    return;
+                }
+
+                serviceIntent = TorchService.createPlayPatternIntent(this, pattern, repeat);
+            } else {
+                final var brightness = intent.getIntExtra(EXTRA_BRIGHTNESS,
+                        TorchSession.BRIGHTNESS_TOGGLE);
+                // Accept both an int and a long. Reading one type doesn't find the other.
+                var fadeMs = intent.getLongExtra(EXTRA_FADE_MS, Long.MIN_VALUE);
+                if (fadeMs == Long.MIN_VALUE) {
+                    fadeMs = intent.getIntExtra(EXTRA_FADE_MS, (int) TorchSession.FADE_DEFAULT);
+                }
+
+                // The service must move to the foreground, even if it would ignore the request.
+                if (brightness < 0 && brightness != TorchSession.BRIGHTNESS_PERSISTED
+                        && brightness != TorchSession.BRIGHTNESS_TOGGLE) {
+                    Log.w(TAG, "Invalid brightness: " + brightness);
+                    finish();
+                    return;
+                } else if (fadeMs < 0 && fadeMs != TorchSession.FADE_DEFAULT) {
+                    Log.w(TAG, "Invalid fade duration: " + fadeMs);
+                    finish();
+                    return;
+                }
+
+                serviceIntent = TorchService.createSetBrightnessIntent(this, brightness, fadeMs);
+                request.putExtras(serviceIntent);
+            }
 
-        final var brightness = getIntent().getIntExtra(EXTRA_BRIGHTNESS, TorchSession.BRIGHTNESS_TOGGLE);
-        final var serviceIntent = TorchService.createSetBrightnessIntent(this, brightness);
-        startForegroundService(serviceIntent);
+            Trace.beginSection("startForegroundService");
+            try {
+                startForegroundService(serviceIntent);
+            } finally {
+                Trace.endSection();
+            }
 
-        finish();
+            finish();
+        } finally {
+            Trace.endSection();
+        }
     }
 }
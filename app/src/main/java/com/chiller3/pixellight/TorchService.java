@@ -12,6 +12,7 @@ import android.content.pm.ServiceInfo;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.IBinder;
+import android.os.Trace;
 import android.util.Log;
 import android.util.Pair;
 
@@ -19,6 +20,12 @@ import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.chiller3.pixellight.core.LightPattern;
+import com.chiller3.pixellight.core.TorchError;
+import com.chiller3.pixellight.core.TorchStateMachine;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.Collections;
 
 /** Service for managing the torch state that can be bound. */
@@ -29,8 +36,13 @@ public class TorchService extends Service implements TorchSession.ServiceOwner,
             TorchService.class.getCanonicalName() + ".set_brightness";
     private static final String ACTION_PERSIST =
             TorchService.class.getCanonicalName() + ".persist";
+    private static final String ACTION_PLAY_PATTERN =
+            TorchService.class.getCanonicalName() + ".play_pattern";
 
     private static final String EXTRA_BRIGHTNESS = "brightness";
+    private static final String EXTRA_FADE_MS = "fade_ms";
+    private static final String EXTRA_PATTERN = "pattern";
+    private static final String EXTRA_REPEAT = "repeat";
 
     private TorchSession session;
     private Preferences prefs;
@@ -38,15 +50,32 @@ public class TorchService extends Service implements TorchSession.ServiceOwner,
     private int curBrightness = -1;
     private boolean initialUpdate = true;
     private boolean foreground = false;
+    // Most recent start request. The service is only stopped if there is nothing newer.
+    private int lastStartId = -1;
 
+    /** {@code fadeMs} can be {@link TorchSession#FADE_DEFAULT} to use the fade settings. */
     public static @NonNull Intent createSetBrightnessIntent(
-            @NonNull Context context, int brightness) {
+            @NonNull Context context, int brightness, long fadeMs) {
         final var intent = new Intent(context, TorchService.class);
         intent.setAction(ACTION_SET_BRIGHTNESS);
         // This is unused, but necessary to ensure that intents for different brightnesses are
         // treated as unique when used with PendingIntent.
         intent.setData(Uri.fromParts(EXTRA_BRIGHTNESS, Integer.toString(brightness), null));
         intent.putExtra(EXTRA_BRIGHTNESS, brightness);
+        intent.putExtra(EXTRA_FADE_MS, fadeMs);
+        return intent;
+    }
+
+    /**
+     * Create an intent to play a pattern. {@code pattern} is in the form that
+     * {@link LightPattern#parse(String, boolean)} accepts.
+     */
+    public static @NonNull Intent createPlayPatternIntent(
+            @NonNull Context context, @NonNull String pattern, boolean repeat) {
+        final var intent = new Intent(context, TorchService.class);
+        intent.setAction(ACTION_PLAY_PATTERN);
+        intent.putExtra(EXTRA_PATTERN, pattern);
+        intent.putExtra(EXTRA_REPEAT, repeat);
         return intent;
     }
 
@@ -67,7 +96,7 @@ public class TorchService extends Service implements TorchSession.ServiceOwner,
         super.onCreate();
         Log.d(TAG, "Creating service");
 
-        session = new TorchSession(this, this);
+        session = new TorchSession(this, this, TorchSession.DEFAULT_IDLE_TIMEOUT_MS);
         prefs = new Preferences(this);
         notifications = new Notifications(this);
 
@@ -80,29 +109,87 @@ public class TorchService extends Service implements TorchSession.ServiceOwner,
         Log.d(TAG, "Destroying service");
 
         session.unregisterTorchListener(this);
+        session.releaseStandby();
+        TorchStatus.onServiceDestroyed();
 
         if (session.isOwnerNeeded()) {
             throw new IllegalStateException("Service destroyed while session still requires it");
         }
+
+        session.release();
+
+        // The process may be killed once nothing is running anymore.
+        prefs.flush();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            Log.d(TAG, "Trimming memory: level=" + level);
+            session.trimMemory();
+        }
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Log.d(TAG, "Received intent: " + intent);
+        Trace.beginSection("TorchService.onStartCommand");
 
-        final var action = intent != null ? intent.getAction() : null;
+        try {
+            lastStartId = startId;
 
-        if (ACTION_SET_BRIGHTNESS.equals(action)) {
-            final var brightness = intent.getIntExtra(EXTRA_BRIGHTNESS, TorchSession.BRIGHTNESS_TOGGLE);
-            session.setTorchBrightness(brightness);
-        } else if (ACTION_PERSIST.equals(action)) {
-            Log.d(TAG, "Keeping service alive");
-        } else {
-            Log.w(TAG, "Invalid intent: " + intent);
-            tryStopService();
+            if (MainApplication.VERBOSE) {
+                Log.d(TAG, "Received intent: " + intent);
+            }
+
+            final var action = intent != null ? intent.getAction() : null;
+
+            if (ACTION_SET_BRIGHTNESS.equals(action)) {
+                final var brightness = intent.getIntExtra(EXTRA_BRIGHTNESS,
+                        TorchSession.BRIGHTNESS_TOGGLE);
+                final var fadeMs = intent.getLongExtra(EXTRA_FADE_MS, TorchSession.FADE_DEFAULT);
+                // Everything else passes the request along explicitly.
+                final var request = TapLatencyTracker.Request.fromIntent(intent,
+                        TapLatencyTracker.EntryPoint.NOTIFICATION);
+                if (session.setTorchBrightness(brightness, fadeMs, request) < 0) {
+                    // Nothing will move the service to the foreground.
+                    tryStopService();
+                }
+            } else if (ACTION_PLAY_PATTERN.equals(action)) {
+                final var spec = intent.getStringExtra(EXTRA_PATTERN);
+
+                try {
+                    session.startPattern(LightPattern.parse(spec != null ? spec : "",
+                            intent.getBooleanExtra(EXTRA_REPEAT, true)));
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Invalid pattern: " + spec, e);
+                    tryStopService();
+                }
+            } else if (ACTION_PERSIST.equals(action)) {
+                Log.d(TAG, "Keeping service alive");
+
+                // The owner may have stopped being needed before this was delivered, in which
+                // case the earlier attempt to stop couldn't stop this request.
+                if (!session.isOwnerNeeded()) {
+                    tryStopService();
+                }
+            } else {
+                Log.w(TAG, "Invalid intent: " + intent);
+                tryStopService();
+            }
+
+            return START_NOT_STICKY;
+        } finally {
+            Trace.endSection();
         }
+    }
 
-        return START_NOT_STICKY;
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("Foreground: " + foreground);
+        writer.println("Current brightness: " + curBrightness);
+        session.dump(writer);
     }
 
     private void updateForegroundNotification() {
@@ -115,31 +202,41 @@ public class TorchService extends Service implements TorchSession.ServiceOwner,
                 ? R.string.notification_action_turn_off
                 : R.string.notification_action_turn_on;
         final var actionBrightness = curBrightness > 0 ? 0 : TorchSession.BRIGHTNESS_PERSISTED;
-        final var actionIntent = createSetBrightnessIntent(this, actionBrightness);
+        final var actionIntent = createSetBrightnessIntent(this, actionBrightness,
+                TorchSession.FADE_DEFAULT);
+        TapLatencyTracker.putEntryPoint(actionIntent, TapLatencyTracker.EntryPoint.NOTIFICATION);
         final var notification = notifications.createPersistentNotification(
                 message, Collections.singletonList(new Pair<>(actionText, actionIntent)));
         final var type = ServiceInfo.FOREGROUND_SERVICE_TYPE_CAMERA;
         startForeground(Notifications.ID_PERSISTENT, notification, type);
 
         foreground = true;
+        TorchStatus.setServiceInForeground(true);
     }
 
     public void tryStopService() {
         final var ownerNeeded = session.isOwnerNeeded();
-        Log.d(TAG, "Attempting to stop service: ownerNeeded=" + ownerNeeded);
+        // A command that was already submitted may need the owner again once it is applied.
+        final var pendingCommands = session.hasPendingCommands();
+        Log.d(TAG, "Attempting to stop service: ownerNeeded=" + ownerNeeded
+                + ", pendingCommands=" + pendingCommands);
 
         if (prefs.getKeepServiceAlive()) {
             Log.d(TAG, "Keeping service alive indefinitely");
-        } else if (!ownerNeeded) {
+        } else if (ownerNeeded) {
+            Log.d(TAG, "Cannot stop service yet");
+        } else if (pendingCommands) {
+            Log.d(TAG, "Trying again once pending commands are applied");
+            session.runAfterPendingCommands(this::tryStopService);
+        } else if (lastStartId >= 0 && !stopSelfResult(lastStartId)) {
+            // Whatever started the service again will try again once it's done.
+            Log.d(TAG, "Not stopping service because of a newer start request");
+        } else {
             Log.d(TAG, "Stopping foreground service");
             stopForeground(Service.STOP_FOREGROUND_REMOVE);
 
             foreground = false;
-
-            Log.d(TAG, "Stopping service");
-            stopSelf();
-        } else {
-            Log.d(TAG, "Cannot stop service yet");
+            TorchStatus.setServiceInForeground(false);
         }
     }
 
@@ -190,6 +287,60 @@ public class TorchService extends Service implements TorchSession.ServiceOwner,
             session.setTorchBrightness(brightness);
         }
 
+        @MainThread
+        public void setTorchBrightness(int brightness, long fadeMs,
+                                       @NonNull TapLatencyTracker.Request request) {
+            session.setTorchBrightness(brightness, fadeMs, request);
+        }
+
+        @MainThread
+        public void startPattern(@NonNull LightPattern pattern) {
+            session.startPattern(pattern);
+        }
+
+        @MainThread
+        public void prewarm(boolean canOpenCamera) {
+            session.prewarm(canOpenCamera);
+        }
+
+        @MainThread
+        @NonNull
+        public TorchStateMachine.PrewarmStats getPrewarmStats() {
+            return session.getPrewarmStats();
+        }
+
+        @MainThread
+        public long getDroppedCaptures() {
+            return session.getDroppedCaptures();
+        }
+
+        @MainThread
+        @NonNull
+        public TorchStateMachine.CommandStats getCommandStats() {
+            return session.getCommandStats();
+        }
+
+        @MainThread
+        @NonNull
+        public TorchStateMachine.CaptureStats getCaptureStats() {
+            return session.getCaptureStats();
+        }
+
+        @MainThread
+        public void requestDiagnostics(@NonNull TorchSession.DiagnosticsListener listener) {
+            session.requestDiagnostics(listener);
+        }
+
+        @MainThread
+        public void calibrateCaptureStrategy(@NonNull TorchSession.CalibrationListener listener) {
+            session.calibrateCaptureStrategy(listener);
+        }
+
+        @MainThread
+        public void releaseStandby() {
+            session.releaseStandby();
+        }
+
         @MainThread
         public void refreshCameras() {
             session.refreshCameras();
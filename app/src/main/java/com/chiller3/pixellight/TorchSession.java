@@ -6,394 +6,627 @@
 package com.chiller3.pixellight;
 
 import android.content.Context;
-import android.graphics.SurfaceTexture;
-import android.hardware.camera2.CameraAccessException;
-import android.hardware.camera2.CameraCaptureSession;
-import android.hardware.camera2.CameraDevice;
-import android.hardware.camera2.CameraManager;
-import android.hardware.camera2.CameraMetadata;
-import android.hardware.camera2.CaptureRequest;
-import android.hardware.camera2.params.OutputConfiguration;
-import android.hardware.camera2.params.SessionConfiguration;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
-import android.view.Surface;
 
+import androidx.annotation.AnyThread;
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
 
-import java.util.Collections;
+import com.chiller3.pixellight.core.CaptureCalibrator;
+import com.chiller3.pixellight.core.LightPattern;
+import com.chiller3.pixellight.core.Scheduler;
+import com.chiller3.pixellight.core.TorchError;
+import com.chiller3.pixellight.core.TorchStateMachine;
+
+import java.io.PrintWriter;
 import java.util.HashSet;
-import java.util.concurrent.Executor;
-import java.util.concurrent.RejectedExecutionException;
 
 /**
- * A type to manage the lifecycle of the torch. The lifecycle begins when the torch is turned on and
- * ends when it turns off.
+ * Android host for the {@link TorchStateMachine}. The state machine is confined to a dedicated
+ * camera thread so that a busy main thread cannot delay the torch and it drives the camera through
+ * {@link Camera2Backend}.
+ *
+ * <p>The public {@link MainThread} methods only post to the camera thread and the {@link Listener}
+ * and {@link ServiceOwner} notifications are posted back to the main thread.
+ *
+ * <p>The camera thread is only started when there is something for it to do. Once the state
+ * machine has been idle for the configured timeout or the system asks the app to trim its memory,
+ * the backend is detached, which drops its surface and cached camera metadata, and the thread
+ * exits. The state machine itself and all statistics are kept. {@link #release()} tears
+ * everything down for good.
+ *
+ * <p>If adaptive brightness is enabled, the {@link AmbientLightMonitor} runs on the camera thread
+ * while the torch is on and changes the brightness whenever the torch is at a steady level.
  */
 public class TorchSession {
-    private enum State {
-        OFF,
-        ACTIVATING,
-        ON,
-    }
-
     private static final String TAG = TorchSession.class.getSimpleName();
 
-    public static final int BRIGHTNESS_TOGGLE = -2;
-    public static final int BRIGHTNESS_PERSISTED = -1;
+    public static final int BRIGHTNESS_TOGGLE = TorchStateMachine.BRIGHTNESS_TOGGLE;
+    public static final int BRIGHTNESS_PERSISTED = TorchStateMachine.BRIGHTNESS_PERSISTED;
+    public static final long FADE_DEFAULT = TorchStateMachine.FADE_DEFAULT;
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 60_000;
 
     // Things following the object lifecycle.
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
-    private final HashSet<Listener> listeners = new HashSet<>();
     private final ServiceOwner serviceOwner;
-    private final CameraManager cameraManager;
-    private final HandlerThread cameraThread = new HandlerThread("CameraThread");
-    private final Handler cameraHandler;
-    private final Executor cameraExecutor = new Executor() {
+    private final long idleTimeoutMs;
+    private final Runnable idleCheck = this::checkIdle;
+    private final Scheduler scheduler = new Scheduler() {
+        @Override
+        public long nanoTime() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+
+        // These are called from the camera thread, except that TorchStateMachine.submitBrightness()
+        // posts from the main thread. That is only safe because the main thread always calls
+        // prepareCameraThread() first and the handler is only cleared on the main thread. On the
+        // camera thread, the handler is only null if the thread is exiting because the machine is
+        // idle.
+
         @Override
-        public void execute(Runnable command) {
-            if (!cameraHandler.post(command)) {
-                throw new RejectedExecutionException("Failed to queue runnable: " + command);
+        public boolean post(@NonNull Runnable runnable) {
+            final var handler = cameraHandler;
+            return handler != null && handler.post(runnable);
+        }
+
+        @Override
+        public boolean postDelayed(@NonNull Runnable runnable, long delayMs) {
+            final var handler = cameraHandler;
+            return handler != null && handler.postDelayed(runnable, delayMs);
+        }
+
+        @Override
+        public void removeCallbacks(@NonNull Runnable runnable) {
+            final var handler = cameraHandler;
+            if (handler != null) {
+                handler.removeCallbacks(runnable);
             }
         }
     };
-    private final SurfaceTexture surfaceTexture = new SurfaceTexture(0);
-    private final Surface surface = new Surface(surfaceTexture);
-    private final Preferences prefs;
+    private final TorchStateMachine.Callbacks callbacks = new TorchStateMachine.Callbacks() {
+        @Override
+        public void onTorchStateChanged(int curBrightness, int maxBrightness) {
+            final var appliedSeq = machine.getCommandStats().commands();
+            final var state = machine.getState();
+
+            usageSampler.onTorchStateChanged(curBrightness, maxBrightness,
+                    prefs.getLowPowerTorch());
+            updateAmbientMonitor(curBrightness > 0, maxBrightness);
+
+            mainHandler.post(() -> {
+                scheduleIdleCheck();
+                listenerCurBrightness = curBrightness;
+                listenerMaxBrightness = maxBrightness;
+                TorchStatus.setState(curBrightness, maxBrightness, state);
+                tapLatency.onTorchStateChanged(appliedSeq, curBrightness > 0);
+
+                for (final var listener : listeners) {
+                    listener.onTorchStateChanged(curBrightness, maxBrightness);
+                }
+            });
+        }
 
-    // Things following the torch lifecycle.
-    private State state = State.OFF;
-    private String cameraId;
-    private int maxBrightness = -1;
-    private int curBrightness = 0;
-    private int desiredBrightness = 0;
-    private CameraDevice camera;
-    private CameraCaptureSession session;
-
-    // Callbacks.
-    private final CameraDevice.StateCallback cameraCallback = new CameraDevice.StateCallback() {
         @Override
-        public void onOpened(@NonNull CameraDevice camera) {
-            mainHandler.post(() -> onCameraOpened(camera));
+        public void onTorchError(@NonNull TorchError error) {
+            mainHandler.post(() -> {
+                TorchStatus.setError(error);
+
+                for (final var listener : listeners) {
+                    listener.onTorchError(error);
+                }
+            });
         }
 
         @Override
-        public void onDisconnected(@NonNull CameraDevice camera) {
-            mainHandler.post(() -> onCameraClosed(camera));
+        public void onOwnerNeeded(boolean needed) {
+            // The camera is opened or closed without the brightness changing.
+            final var state = machine.getState();
+
+            mainHandler.post(() -> {
+                scheduleIdleCheck();
+                ownerNeeded = needed;
+
+                if (listenerMaxBrightness >= 0) {
+                    TorchStatus.setState(listenerCurBrightness, listenerMaxBrightness, state);
+                }
+
+                if (needed) {
+                    Log.d(TAG, "Notifying primary owner that foreground mode is needed");
+                    serviceOwner.onTorchOwnerNeeded(true, true);
+                } else {
+                    Log.d(TAG, "Notifying primary owner that foreground mode is not needed");
+                    serviceOwner.onTorchOwnerNeeded(false, false);
+                }
+            });
         }
 
         @Override
-        public void onError(@NonNull CameraDevice camera, int error) {
-            mainHandler.post(() -> onCameraError(camera, error));
+        public void runAfterOwnerUpdate(@NonNull Runnable runnable) {
+            mainHandler.post(() -> postToCamera(runnable));
         }
     };
-    private final CameraCaptureSession.StateCallback sessionCallback =
-            new CameraCaptureSession.StateCallback() {
+    private final AmbientLightMonitor.Callback ambientCallback =
+            new AmbientLightMonitor.Callback() {
                 @Override
-                public void onConfigured(@NonNull CameraCaptureSession session) {
-                    mainHandler.post(() -> onSessionConfigured(session));
+                public int getAdaptiveCeiling() {
+                    return machine.isSteadyOn()
+                            ? Math.min(prefs.getBrightness(ambientMaxBrightness),
+                                    ambientMaxBrightness)
+                            : -1;
                 }
 
                 @Override
-                public void onConfigureFailed(@NonNull CameraCaptureSession session) {
-                    mainHandler.post(() -> onSessionConfigureFailed(session));
+                public void onAdaptiveLevel(int level) {
+                    machine.submitBrightness(level);
                 }
             };
-
-    public TorchSession(@NonNull Context context, @NonNull ServiceOwner owner) {
+    private final Preferences prefs;
+    private final Camera2Backend backend;
+    private final TorchStateMachine machine;
+    private final ProcStatCpuClock cpuClock = new ProcStatCpuClock();
+    // Only accessed from the camera thread.
+    private final TorchUsageSampler usageSampler = new TorchUsageSampler(cpuClock);
+    private final AmbientLightMonitor ambientMonitor;
+    private int ambientMaxBrightness = -1;
+    private CaptureCalibrator calibrator;
+
+    // Things following the object lifecycle that are only accessed from the main thread.
+    private final HashSet<Listener> listeners = new HashSet<>();
+    private final TapLatencyTracker tapLatency = new TapLatencyTracker();
+    private boolean ownerNeeded = false;
+    // Sequence number of the last brightness command submitted from the main thread.
+    private long submittedCommandSeq = 0;
+    // Patterns posted to the camera thread that haven't started yet.
+    private int pendingPatterns = 0;
+    // Only replaced from the main thread.
+    private HandlerThread cameraThread;
+    private volatile Handler cameraHandler;
+    // Incremented for every runnable posted to the camera thread from the main thread.
+    private long cameraWork = 0;
+    // Whether the backend might be detached and must be attached before anything else runs.
+    private boolean detachRequested = false;
+    private boolean camerasRefreshed = false;
+    private boolean released = false;
+    // Last state sent to the listeners. The max brightness is -1 if it is not known yet.
+    private int listenerCurBrightness = 0;
+    private int listenerMaxBrightness = -1;
+
+    /**
+     * @param idleTimeoutMs How long the state machine must be idle before the camera thread and
+     *                      the backend's resources are released
+     */
+    @MainThread
+    public TorchSession(@NonNull Context context, @NonNull ServiceOwner owner,
+                        long idleTimeoutMs) {
         serviceOwner = owner;
-
-        cameraThread.start();
-        cameraHandler = new Handler(cameraThread.getLooper());
-
-        cameraManager = context.getSystemService(CameraManager.class);
+        this.idleTimeoutMs = idleTimeoutMs;
 
         prefs = new Preferences(context);
+        backend = new Camera2Backend(context, prefs);
+        // The torch callback is only registered with the camera service once the backend is
+        // attached to the camera thread.
+        machine = new TorchStateMachine(scheduler, backend, prefs, callbacks);
+        ambientMonitor = new AmbientLightMonitor(context, ambientCallback);
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-
-        cameraThread.quitSafely();
-
-        surface.release();
-        surfaceTexture.release();
+    /** Sample the ambient light only while the torch is on. */
+    @WorkerThread
+    private void updateAmbientMonitor(boolean on, int maxBrightness) {
+        ambientMaxBrightness = maxBrightness;
+
+        if (!on) {
+            ambientMonitor.stop();
+        } else if (!ambientMonitor.isActive() && prefs.getAdaptiveBrightness()) {
+            final var handler = cameraHandler;
+            if (handler != null) {
+                ambientMonitor.start(handler);
+            }
+        }
     }
 
     @MainThread
-    public void registerTorchListener(@NonNull Listener listener) {
-        Log.d(TAG, "Registering listener: " + listener);
-
-        if (!listeners.add(listener)) {
-            Log.w(TAG, "Listener was already registered: " + listener);
-        }
+    private void startCameraThread() {
+        Log.d(TAG, "Starting camera thread");
 
-        if (updateCameraDetails()) {
-            listener.onTorchStateChanged(curBrightness, maxBrightness);
-        }
+        cameraThread = new HandlerThread("CameraThread");
+        cameraThread.start();
+        cameraHandler = new Handler(cameraThread.getLooper());
     }
 
+    /**
+     * Start the camera thread if needed and make sure that the backend is attached before anything
+     * that is posted afterwards runs. This must be called before anything is posted to the camera
+     * thread from the main thread, including indirectly through the state machine.
+     *
+     * @return Whether the camera thread is usable
+     */
     @MainThread
-    public void unregisterTorchListener(@NonNull Listener listener) {
-        Log.d(TAG, "Unregistering listener: " + listener);
+    private boolean prepareCameraThread() {
+        if (released) {
+            Log.w(TAG, "Ignoring camera thread work after release");
+            return false;
+        }
 
-        if (!listeners.remove(listener)) {
-            Log.w(TAG, "Listener was never registered: " + listener);
+        if (cameraHandler == null) {
+            startCameraThread();
+            backend.attach(cameraHandler);
+            detachRequested = false;
+
+            // Commands are ignored until the machine knows which camera to use.
+            if (!camerasRefreshed) {
+                camerasRefreshed = true;
+                cameraHandler.post(machine::refreshCameras);
+            }
+        } else if (detachRequested) {
+            final var handler = cameraHandler;
+            detachRequested = false;
+            cameraHandler.post(() -> backend.attach(handler));
         }
-    }
 
-    public boolean isOwnerNeeded() {
-        return state != State.OFF;
-    }
+        ++cameraWork;
+        scheduleIdleCheck();
 
-    private void notifyOwnerNeeded() {
-        Log.d(TAG, "Notifying primary owner that foreground mode is needed");
-        serviceOwner.onTorchOwnerNeeded(true, state != State.OFF);
+        return true;
     }
 
-    private void tryNotifyOwnerNotNeeded() {
-        if (isOwnerNeeded()) {
-            Log.d(TAG, "Foreground mode is still needed: state=" + state);
-        } else {
-            Log.d(TAG, "Notifying primary owner that foreground mode is not needed");
-            serviceOwner.onTorchOwnerNeeded(false, false);
+    /** Run {@code runnable} on the camera thread, starting it first if needed. */
+    @MainThread
+    private void postToCamera(@NonNull Runnable runnable) {
+        if (prepareCameraThread()) {
+            cameraHandler.post(runnable);
         }
     }
 
     @MainThread
-    private boolean updateCameraDetails() {
-        if (cameraId != null) {
-            return true;
+    private void scheduleIdleCheck() {
+        mainHandler.removeCallbacks(idleCheck);
+
+        if (!released && cameraHandler != null) {
+            mainHandler.postDelayed(idleCheck, idleTimeoutMs);
         }
+    }
 
-        try {
-            for (final var cameraId : cameraManager.getCameraIdList()) {
-                final var characteristics = cameraManager.getCameraCharacteristics(cameraId);
-                final var maxBrightness = characteristics.get(
-                        ExperimentalKeys.CHARACTERISTICS_FLASHLIGHT_BRIGHTNESS_LEVEL_MAX);
-                if (maxBrightness == null) {
-                    continue;
-                }
+    /**
+     * Release the camera thread and the backend's resources if the state machine is idle. If it is
+     * not, this is tried again after the idle timeout.
+     */
+    @MainThread
+    private void checkIdle() {
+        mainHandler.removeCallbacks(idleCheck);
 
-                this.cameraId = cameraId;
-                this.maxBrightness = maxBrightness;
-                this.curBrightness = 0;
+        if (released || cameraHandler == null) {
+            return;
+        }
 
-                Log.d(TAG, "Found camera " + cameraId + " with max brightness " + maxBrightness);
+        final var handler = cameraHandler;
+        final var work = cameraWork;
+        detachRequested = true;
 
-                return true;
+        handler.post(() -> {
+            if (calibrator != null || !machine.isIdle()) {
+                mainHandler.post(this::scheduleIdleCheck);
+                return;
             }
 
-            Log.e(TAG, "Failed to find suitable camera");
-            onError(TorchError.NO_VALID_CAMERA);
-        } catch (CameraAccessException e) {
-            Log.e(TAG, "Failed to query for suitable cameras", e);
-            onError(TorchError.fromException(e));
-        }
+            backend.detach();
 
-        return false;
+            mainHandler.post(() -> {
+                // Anything posted in the meantime runs after the backend is attached again.
+                if (cameraHandler == handler && cameraWork == work) {
+                    Log.d(TAG, "Stopping idle camera thread");
+
+                    cameraThread.quitSafely();
+                    cameraThread = null;
+                    cameraHandler = null;
+                }
+            });
+        });
     }
 
+    /**
+     * Release the camera thread and the backend's resources right away if the state machine is
+     * idle. This is for {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+     */
     @MainThread
-    public void refreshCameras() {
-        if (updateCameraDetails()) {
-            for (final var listener : listeners) {
-                listener.onTorchStateChanged(curBrightness, maxBrightness);
-            }
-        }
+    public void trimMemory() {
+        checkIdle();
     }
 
+    /** Release everything. The session must not be used afterwards. */
     @MainThread
-    public void setTorchBrightness(int brightness) {
-        Log.d(TAG, "User requesting brightness of " + brightness);
-
-        if (brightness >= 0) {
-            desiredBrightness = brightness;
-        } else if (brightness == BRIGHTNESS_PERSISTED) {
-            desiredBrightness = prefs.getBrightness(maxBrightness);
-        } else if (brightness == BRIGHTNESS_TOGGLE) {
-            switch (state) {
-                case OFF:
-                    desiredBrightness = prefs.getBrightness(maxBrightness);
-                    break;
-                case ACTIVATING, ON:
-                    desiredBrightness = 0;
-                    break;
-            }
-        } else {
-            Log.w(TAG, "Ignoring invalid brightness value: " + brightness);
+    public void release() {
+        if (released) {
             return;
         }
 
-        desiredBrightness = Math.min(desiredBrightness, maxBrightness);
+        released = true;
+        mainHandler.removeCallbacks(idleCheck);
 
-        if (desiredBrightness == 0) {
-            closeCamera();
-            return;
-        }
+        if (cameraHandler != null) {
+            cameraHandler.post(() -> {
+                if (calibrator != null) {
+                    calibrator.cancel();
+                }
 
-        switch (state) {
-            case OFF -> openCamera();
-            // Session is not ready yet. It'll pick up the new value when it is ready.
-            case ACTIVATING -> {}
-            // Session is already active. Change the brightness with a new capture request.
-            case ON -> performCapture();
+                ambientMonitor.stop();
+                machine.release();
+                backend.release();
+            });
+            cameraThread.quitSafely();
+
+            cameraThread = null;
+            cameraHandler = null;
+        } else {
+            // The backend is already detached, so this only forgets the torch callback.
+            machine.release();
+            backend.release();
         }
     }
 
     @MainThread
-    private void onError(@NonNull TorchError error) {
-        Log.w(TAG, "Camera lifecycle exiting due to error: " + error);
+    public void registerTorchListener(@NonNull Listener listener) {
+        Log.d(TAG, "Registering listener: " + listener);
 
-        notifyTorchError(error);
+        if (!listeners.add(listener)) {
+            Log.w(TAG, "Listener was already registered: " + listener);
+        }
 
-        if (state != State.OFF) {
-            closeCamera();
+        // Don't start the camera thread just to find out that the torch is off. The cached
+        // details are verified the next time the machine looks for a camera.
+        if (listenerMaxBrightness < 0 && cameraHandler == null) {
+            final var details = prefs.getCameraDetails();
+            if (details != null) {
+                listenerCurBrightness = 0;
+                listenerMaxBrightness = details.maxBrightness();
+                TorchStatus.setState(listenerCurBrightness, listenerMaxBrightness,
+                        TorchStateMachine.State.OFF);
+            }
         }
-    }
 
-    @MainThread
-    private void openCamera() {
-        assert state == State.OFF;
-        state = State.ACTIVATING;
-
-        notifyOwnerNeeded();
-
-        try {
-            cameraManager.openCamera(cameraId, cameraCallback, cameraHandler);
-        } catch (CameraAccessException e) {
-            Log.e(TAG, "Failed to open camera: " + cameraId, e);
-            onError(TorchError.fromException(e));
-        } catch (SecurityException e) {
-            Log.e(TAG, "Permission denied when opening camera: " + cameraId, e);
-            onError(TorchError.NO_PERMISSION);
+        if (listenerMaxBrightness >= 0) {
+            listener.onTorchStateChanged(listenerCurBrightness, listenerMaxBrightness);
+        } else {
+            // All listeners will be notified once the camera details are known.
+            refreshCameras();
         }
     }
 
     @MainThread
-    private void closeCamera() {
-        // We don't need to close the session. Closing the camera device is sufficient.
-        session = null;
+    public void unregisterTorchListener(@NonNull Listener listener) {
+        Log.d(TAG, "Unregistering listener: " + listener);
 
-        if (camera != null) {
-            camera.close();
-            camera = null;
+        if (!listeners.remove(listener)) {
+            Log.w(TAG, "Listener was never registered: " + listener);
         }
+    }
 
-        final var notifyOwner = state != State.OFF;
-        state = State.OFF;
-        curBrightness = 0;
+    /** Whether the service owner was last told that it is needed. */
+    @MainThread
+    public boolean isOwnerNeeded() {
+        return ownerNeeded;
+    }
 
-        notifyTorchState();
+    /**
+     * Whether commands from the main thread haven't been applied yet. The last notification from
+     * {@link ServiceOwner#onTorchOwnerNeeded(boolean, boolean)} may predate them, so the owner may
+     * still be needed.
+     */
+    @MainThread
+    public boolean hasPendingCommands() {
+        return pendingPatterns > 0 || machine.getCommandStats().commands() < submittedCommandSeq;
+    }
 
-        // Only notify if the torch was turned on. The service would not have been running in the
-        // foreground otherwise.
-        if (notifyOwner) {
-            tryNotifyOwnerNotNeeded();
+    /**
+     * Run {@code runnable} on the main thread after everything that is already queued on the
+     * camera thread, including any owner notifications that it causes.
+     */
+    @MainThread
+    public void runAfterPendingCommands(@NonNull Runnable runnable) {
+        final var handler = cameraHandler;
+        if (handler == null || !handler.post(() -> mainHandler.post(runnable))) {
+            mainHandler.post(runnable);
         }
     }
 
     @MainThread
-    private void onCameraOpened(@NonNull CameraDevice camera) {
-        Log.d(TAG, "Camera " + camera.getId() + " opened");
-
-        this.camera = camera;
-
-        final var output = Collections.singletonList(new OutputConfiguration(surface));
-        final var sessionConfiguration = new SessionConfiguration(
-                SessionConfiguration.SESSION_REGULAR, output, cameraExecutor, sessionCallback);
+    public void refreshCameras() {
+        postToCamera(machine::refreshCameras);
+    }
 
-        try {
-            camera.createCaptureSession(sessionConfiguration);
-        } catch (CameraAccessException e) {
-            Log.e(TAG, "Failed to create capture session", e);
-            onError(TorchError.fromException(e));
+    @MainThread
+    public void setTorchBrightness(int brightness) {
+        if (prepareCameraThread()) {
+            onCommandSubmitted(machine.submitBrightness(brightness));
         }
     }
 
+    /**
+     * Same as {@link #setTorchBrightness(int)}, but fade to the new level over {@code fadeMs},
+     * which can be {@link #FADE_DEFAULT}, and measure how long it takes for the request to take
+     * effect.
+     *
+     * @return The sequence number of the command or -1 if it was rejected
+     * Each step of the fade is only submitted once the previous capture completes. See
+     * {@link TorchStateMachine#submitBrightness(int, long)}.
+     */
     @MainThread
-    private void onCameraClosed(@NonNull CameraDevice camera) {
-        Log.e(TAG, "Camera " + camera.getId() + " disconnected");
+    public long setTorchBrightness(int brightness, long fadeMs,
+                                   @NonNull TapLatencyTracker.Request request) {
+        final var seq = prepareCameraThread() ? machine.submitBrightness(brightness, fadeMs) : -1;
+        onCommandSubmitted(seq);
+        tapLatency.onCommandSubmitted(request, seq);
+        return seq;
+    }
 
-        onError(TorchError.DISCONNECTED);
+    @MainThread
+    private void onCommandSubmitted(long seq) {
+        submittedCommandSeq = Math.max(submittedCommandSeq, seq);
     }
 
+    /**
+     * Play a pattern at the persisted brightness until it finishes or the next brightness change.
+     * See {@link TorchStateMachine#startPattern(LightPattern)}.
+     */
     @MainThread
-    private void onCameraError(@NonNull CameraDevice camera, int error) {
-        Log.e(TAG, "Camera " + camera.getId() + " failed with error: " + error);
+    public void startPattern(@NonNull LightPattern pattern) {
+        if (!prepareCameraThread()) {
+            return;
+        }
 
-        final var torchError = switch (error) {
-            case CameraDevice.StateCallback.ERROR_CAMERA_IN_USE -> TorchError.IN_USE;
-            case CameraDevice.StateCallback.ERROR_MAX_CAMERAS_IN_USE -> TorchError.MAXIMUM_IN_USE;
-            case CameraDevice.StateCallback.ERROR_CAMERA_DISABLED -> TorchError.BLOCKED_BY_POLICY;
-            case CameraDevice.StateCallback.ERROR_CAMERA_DEVICE -> TorchError.DEVICE_ERROR;
-            case CameraDevice.StateCallback.ERROR_CAMERA_SERVICE -> TorchError.SERVICE_ERROR;
-            default -> TorchError.UNKNOWN;
-        };
+        ++pendingPatterns;
 
-        onError(torchError);
+        cameraHandler.post(() -> {
+            machine.startPattern(pattern);
+            // Any owner notification from starting the pattern is posted before this.
+            mainHandler.post(() -> --pendingPatterns);
+        });
     }
 
+    /**
+     * Speculatively prepare for the torch being turned on soon. See
+     * {@link TorchStateMachine#prewarm(boolean)}.
+     *
+     * <p>{@link MainActivity} always calls this. {@link TorchTileService} only calls this while it
+     * is bound, which is when the service is in the foreground or no camera details are cached.
+     * Those are the only cases where pre-warming from the tile does anything useful: otherwise the
+     * camera can't be opened and the camera details are already known, so binding just to
+     * pre-warm would only start the camera thread early at the cost of creating the whole session
+     * every time the quick settings panel is opened.
+     */
     @MainThread
-    private void onSessionConfigured(@NonNull CameraCaptureSession session) {
-        Log.d(TAG, "Camera session configured: " + session);
+    public void prewarm(boolean canOpenCamera) {
+        postToCamera(() -> machine.prewarm(canOpenCamera));
+    }
 
-        this.session = session;
+    /** Release the camera if it is only being held open for warm standby. */
+    @MainThread
+    public void releaseStandby() {
+        // The camera thread is only stopped when nothing is open.
+        if (cameraHandler != null) {
+            postToCamera(machine::releaseStandby);
+        }
+    }
 
-        performCapture();
+    @AnyThread
+    @NonNull
+    public TorchStateMachine.PrewarmStats getPrewarmStats() {
+        return machine.getPrewarmStats();
     }
 
-    @MainThread
-    private void onSessionConfigureFailed(@NonNull CameraCaptureSession session) {
-        Log.e(TAG, "Failed to configure session: " + session);
+    /** Get the number of intermediate brightness changes that were never submitted. */
+    @AnyThread
+    public long getDroppedCaptures() {
+        return machine.getDroppedCaptures();
+    }
+
+    @AnyThread
+    @NonNull
+    public TorchStateMachine.CommandStats getCommandStats() {
+        return machine.getCommandStats();
+    }
 
-        onError(TorchError.SESSION_ERROR);
+    @AnyThread
+    @NonNull
+    public TorchStateMachine.CaptureStats getCaptureStats() {
+        return machine.getCaptureStats();
     }
 
+    /**
+     * Measure every capture strategy and persist the cheapest one for this OS build. The torch
+     * turns on at the persisted brightness for a couple of seconds per strategy. This fails with
+     * {@link TorchError#IN_USE} if the torch is already on. Turning on the torch during the
+     * calibration takes the camera over and aborts it.
+     */
     @MainThread
-    private void performCapture() {
-        try {
-            assert state == State.ACTIVATING || state == State.ON;
-            state = State.ON;
-
-            if (curBrightness != desiredBrightness) {
-                Log.d(TAG, "Performing capture because current brightness (" + curBrightness +
-                        ") != desired brightness (" + desiredBrightness + ")");
-                curBrightness = desiredBrightness;
-
-                final var captureRequest = session.getDevice()
-                        .createCaptureRequest(CameraDevice.TEMPLATE_MANUAL);
-                captureRequest.addTarget(surface);
-                captureRequest.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_TORCH);
-                captureRequest.set(ExperimentalKeys.REQUEST_FLASHLIGHT_BRIGHTNESS_ENABLED, true);
-                captureRequest.set(ExperimentalKeys.REQUEST_FLASHLIGHT_BRIGHTNESS, curBrightness);
-
-                session.capture(captureRequest.build(), null, cameraHandler);
-
-                notifyTorchState();
+    public void calibrateCaptureStrategy(@NonNull CalibrationListener listener) {
+        postToCamera(() -> {
+            if (calibrator != null) {
+                notifyCalibrationFailed(listener, TorchError.IN_USE);
+                return;
             }
-        } catch (CameraAccessException e) {
-            Log.e(TAG, "Failed to perform capture", e);
-            onError(TorchError.fromException(e));
-        }
-    }
 
-    private void notifyTorchState() {
-        if (cameraId != null) {
-            for (final var listener : listeners) {
-                listener.onTorchStateChanged(curBrightness, maxBrightness);
+            machine.releaseStandby();
+
+            if (!machine.isIdle()) {
+                notifyCalibrationFailed(listener, TorchError.IN_USE);
+                return;
             }
-        }
+
+            final var details = machine.refreshCameras() ? prefs.getCameraDetails() : null;
+            if (details == null) {
+                notifyCalibrationFailed(listener, TorchError.NO_VALID_CAMERA);
+                return;
+            }
+
+            // Levels in the torch strength range never use a capture session.
+            final var brightness = Math.min(Math.max(prefs.getBrightness(details.maxBrightness()),
+                    details.maxTorchStrength() + 1), details.maxBrightness());
+
+            calibrator = new CaptureCalibrator(scheduler, backend, cpuClock, details, brightness,
+                    CaptureCalibrator.DEFAULT_WINDOW_MS, new CaptureCalibrator.Listener() {
+                        @Override
+                        public void onCalibrationFinished(
+                                @NonNull CaptureCalibrator.Result result) {
+                            calibrator = null;
+                            prefs.setCaptureStrategy(result.best());
+
+                            mainHandler.post(() -> listener.onCalibrationFinished(result));
+                        }
+
+                        @Override
+                        public void onCalibrationFailed(@NonNull TorchError error) {
+                            calibrator = null;
+                            notifyCalibrationFailed(listener, error);
+                        }
+                    });
+            calibrator.start();
+        });
     }
 
-    private void notifyTorchError(@NonNull TorchError error) {
-        for (final var listener : listeners) {
-            listener.onTorchError(error);
-        }
+    private void notifyCalibrationFailed(@NonNull CalibrationListener listener,
+                                         @NonNull TorchError error) {
+        mainHandler.post(() -> listener.onCalibrationFailed(error));
+    }
+
+    /**
+     * Collect the usage statistics. The CPU time is sampled on the camera thread and the result is
+     * delivered on the main thread.
+     */
+    @MainThread
+    public void requestDiagnostics(@NonNull DiagnosticsListener listener) {
+        postToCamera(() -> {
+            final var usage = usageSampler.getStats();
+            final var cameraOpens = machine.getCameraOpens();
+            final var captures = machine.getCaptureStats();
+            final var ambient = ambientMonitor.getStats();
+
+            mainHandler.post(() -> listener.onDiagnostics(new Diagnostics(usage, cameraOpens,
+                    captures, tapLatency.getCount(), tapLatency.getMeanMs(), ambient)));
+        });
+    }
+
+    /**
+     * Print the statistics and the trace of recent events. This is what
+     * {@code adb shell dumpsys activity service} shows for the service.
+     */
+    @MainThread
+    public void dump(@NonNull PrintWriter writer) {
+        writer.println("Camera thread: " + (cameraHandler != null ? "running" : "stopped"));
+        writer.println("Commands: " + machine.getCommandStats());
+        writer.println("Captures: " + machine.getCaptureStats());
+        writer.println("Dropped captures: " + machine.getDroppedCaptures());
+        writer.println("Pre-warm: " + machine.getPrewarmStats());
+        writer.println("Camera opens: " + machine.getCameraOpens());
+        writer.println("Patterns: " + machine.getPatternStats());
+        writer.println("Fades: " + machine.getRampStats());
+        tapLatency.dump(writer);
+        machine.getTrace().dump(writer);
     }
 
     public interface Listener {
@@ -404,6 +637,36 @@ public class TorchSession {
         void onTorchError(@NonNull TorchError error);
     }
 
+    /**
+     * @param usage CPU time and on-time accounting
+     * @param cameraOpens Number of times a camera device was opened
+     * @param captures Capture statistics
+     * @param timeToLightSamples Number of requests that turned the torch on and were measured
+     * @param meanTimeToLightMs Mean time from those requests until the torch was on
+     * @param ambient Cost of sampling the light sensor for adaptive brightness
+     */
+    public record Diagnostics(
+            @NonNull TorchUsageSampler.Stats usage,
+            long cameraOpens,
+            @NonNull TorchStateMachine.CaptureStats captures,
+            long timeToLightSamples,
+            double meanTimeToLightMs,
+            @NonNull AmbientLightMonitor.Stats ambient
+    ) {}
+
+    public interface DiagnosticsListener {
+        @MainThread
+        void onDiagnostics(@NonNull Diagnostics diagnostics);
+    }
+
+    public interface CalibrationListener {
+        @MainThread
+        void onCalibrationFinished(@NonNull CaptureCalibrator.Result result);
+
+        @MainThread
+        void onCalibrationFailed(@NonNull TorchError error);
+    }
+
     public interface ServiceOwner {
         @MainThread
         void onTorchOwnerNeeded(boolean needService, boolean needForeground);
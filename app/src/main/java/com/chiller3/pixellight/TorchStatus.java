@@ -0,0 +1,149 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.chiller3.pixellight.core.TorchError;
+import com.chiller3.pixellight.core.TorchStateMachine;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Last known torch state, shared within the process. This lets the quick settings tile and
+ * {@link TorchStatusProvider} report the state without binding to {@link TorchService}, which
+ * would create the whole {@link TorchSession} just to find out that the torch is off.
+ *
+ * <p>Listeners are notified from a separate main thread message, so they are free to bind to or
+ * unbind from the service.
+ */
+public final class TorchStatus {
+    public interface Listener {
+        /** Called when the {@link Snapshot} changes. */
+        @MainThread
+        void onTorchStatusChanged();
+
+        /** Called when {@link #isServiceInForeground()} changes. */
+        @MainThread
+        void onServiceForegroundChanged();
+    }
+
+    /**
+     * Immutable snapshot of the state. It is only replaced when something changes, so reading it
+     * does not allocate.
+     *
+     * @param curBrightness Current brightness or -1 if no session has reported it since the
+     *                      process started
+     * @param maxBrightness Maximum brightness or -1 if not known
+     * @param state State machine state as of the last change or null if not known
+     * @param lastError Most recent error or null if there has been none
+     */
+    public record Snapshot(int curBrightness, int maxBrightness,
+                           @Nullable TorchStateMachine.State state,
+                           @Nullable TorchError lastError) {}
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    private static final HashSet<Listener> listeners = new HashSet<>();
+    private static final Runnable notifyStatusChanged = () -> notifyListeners(false);
+    private static final Runnable notifyForegroundChanged = () -> notifyListeners(true);
+
+    // Only written from the main thread.
+    private static volatile Snapshot snapshot = new Snapshot(-1, -1, null, null);
+    private static boolean serviceInForeground = false;
+
+    private TorchStatus() {}
+
+    @MainThread
+    public static void registerListener(@NonNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    @MainThread
+    public static void unregisterListener(@NonNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private static void notifyListeners(boolean foreground) {
+        for (final var listener : new ArrayList<>(listeners)) {
+            if (foreground) {
+                listener.onServiceForegroundChanged();
+            } else {
+                listener.onTorchStatusChanged();
+            }
+        }
+    }
+
+    private static void scheduleNotify(@NonNull Runnable notify) {
+        handler.removeCallbacks(notify);
+        handler.post(notify);
+    }
+
+    @MainThread
+    private static void setSnapshot(@NonNull Snapshot newSnapshot) {
+        if (!snapshot.equals(newSnapshot)) {
+            snapshot = newSnapshot;
+            scheduleNotify(notifyStatusChanged);
+        }
+    }
+
+    @AnyThread
+    @NonNull
+    public static Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /** Get the current brightness or -1 if it is not known. */
+    @AnyThread
+    public static int getBrightness() {
+        return snapshot.curBrightness();
+    }
+
+    @MainThread
+    public static void setState(int curBrightness, int maxBrightness,
+                                @NonNull TorchStateMachine.State state) {
+        final var old = snapshot;
+        setSnapshot(new Snapshot(curBrightness, maxBrightness, state, old.lastError()));
+    }
+
+    @MainThread
+    public static void setError(@NonNull TorchError error) {
+        final var old = snapshot;
+        setSnapshot(new Snapshot(old.curBrightness(), old.maxBrightness(), old.state(), error));
+    }
+
+    /** Whether {@link TorchService} is running in the foreground and can use the camera. */
+    @MainThread
+    public static boolean isServiceInForeground() {
+        return serviceInForeground;
+    }
+
+    @MainThread
+    public static void setServiceInForeground(boolean foreground) {
+        if (serviceInForeground != foreground) {
+            serviceInForeground = foreground;
+            scheduleNotify(notifyForegroundChanged);
+        }
+    }
+
+    /** The session releases the camera when the service goes away, so the torch is off. */
+    @MainThread
+    public static void onServiceDestroyed() {
+        setServiceInForeground(false);
+
+        final var old = snapshot;
+        if (old.curBrightness() > 0 || old.state() != null) {
+            setSnapshot(new Snapshot(Math.min(old.curBrightness(), 0), old.maxBrightness(),
+                    TorchStateMachine.State.OFF, old.lastError()));
+        }
+    }
+}
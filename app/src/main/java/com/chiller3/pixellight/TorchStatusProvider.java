@@ -0,0 +1,223 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Read-only provider for the last known torch state in {@link TorchStatus}. Queries only read the
+ * in-memory snapshot, so they never start {@link TorchService} or the camera pipeline, and each
+ * query only allocates the single row cursor. Observers of {@link #PATH_STATE} are notified when
+ * the state changes.
+ *
+ * <p>This is exported. Do not rename anything.
+ */
+public class TorchStatusProvider extends ContentProvider implements TorchStatus.Listener {
+    public static final String AUTHORITY_SUFFIX = ".torchstatus";
+    public static final String PATH_STATE = "state";
+
+    /** Current brightness or null if not known. */
+    public static final String COLUMN_CUR_BRIGHTNESS = "cur_brightness";
+    /** Maximum brightness or null if not known. */
+    public static final String COLUMN_MAX_BRIGHTNESS = "max_brightness";
+    /** Name of the state machine state or null if not known. */
+    public static final String COLUMN_STATE = "state";
+    /** Name of the most recent error or null if there has been none. */
+    public static final String COLUMN_LAST_ERROR = "last_error";
+
+    private static final String[] ALL_COLUMNS = {
+            COLUMN_CUR_BRIGHTNESS,
+            COLUMN_MAX_BRIGHTNESS,
+            COLUMN_STATE,
+            COLUMN_LAST_ERROR,
+    };
+
+    private Uri stateUri;
+    private String stateType;
+
+    @Override
+    public boolean onCreate() {
+        final var authority = getContext().getPackageName() + AUTHORITY_SUFFIX;
+        stateUri = Uri.parse("content://" + authority + "/" + PATH_STATE);
+        stateType = "vnd.android.cursor.item/vnd." + authority + "." + PATH_STATE;
+
+        // Providers are created on the main thread.
+        TorchStatus.registerListener(this);
+
+        return true;
+    }
+
+    @Override
+    public void onTorchStatusChanged() {
+        getContext().getContentResolver().notifyChange(stateUri, null);
+    }
+
+    @Override
+    public void onServiceForegroundChanged() {
+        // Not one of the columns.
+    }
+
+    private boolean isStateUri(@NonNull Uri uri) {
+        return stateUri.equals(uri);
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection,
+                        @Nullable String selection, @Nullable String[] selectionArgs,
+                        @Nullable String sortOrder) {
+        if (!isStateUri(uri)) {
+            return null;
+        }
+
+        final var cursor = new SnapshotCursor(TorchStatus.getSnapshot(),
+                projection != null ? projection : ALL_COLUMNS);
+        cursor.setNotificationUri(getContext().getContentResolver(), stateUri);
+
+        return cursor;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return isStateUri(uri) ? stateType : null;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        throw new UnsupportedOperationException("Read-only provider");
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read-only provider");
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values,
+                      @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read-only provider");
+    }
+
+    /**
+     * Single row cursor that reads directly from a snapshot instead of copying it into rows. No
+     * values are boxed.
+     */
+    private static class SnapshotCursor extends AbstractCursor {
+        // Indexes into ALL_COLUMNS.
+        private static final int CUR_BRIGHTNESS = 0;
+        private static final int MAX_BRIGHTNESS = 1;
+        private static final int STATE = 2;
+        private static final int LAST_ERROR = 3;
+
+        private final TorchStatus.Snapshot snapshot;
+        private final String[] columns;
+        private final int[] columnIds;
+
+        SnapshotCursor(@NonNull TorchStatus.Snapshot snapshot, @NonNull String[] columns) {
+            this.snapshot = snapshot;
+            this.columns = columns;
+
+            columnIds = new int[columns.length];
+            for (int i = 0; i < columns.length; ++i) {
+                columnIds[i] = columnId(columns[i]);
+            }
+        }
+
+        private static int columnId(@NonNull String name) {
+            for (int i = 0; i < ALL_COLUMNS.length; ++i) {
+                if (ALL_COLUMNS[i].equals(name)) {
+                    return i;
+                }
+            }
+
+            throw new IllegalArgumentException("Invalid column: " + name);
+        }
+
+        @Override
+        public int getCount() {
+            return 1;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return columns;
+        }
+
+        @Override
+        public String getString(int column) {
+            if (isNull(column)) {
+                return null;
+            }
+
+            return switch (columnIds[column]) {
+                case STATE -> snapshot.state().name();
+                case LAST_ERROR -> snapshot.lastError().name();
+                default -> Integer.toString(getInt(column));
+            };
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getInt(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return switch (columnIds[column]) {
+                case CUR_BRIGHTNESS -> Math.max(snapshot.curBrightness(), 0);
+                case MAX_BRIGHTNESS -> Math.max(snapshot.maxBrightness(), 0);
+                default -> 0;
+            };
+        }
+
+        @Override
+        public long getLong(int column) {
+            return getInt(column);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return getInt(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return getInt(column);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return switch (columnIds[column]) {
+                case CUR_BRIGHTNESS -> snapshot.curBrightness() < 0;
+                case MAX_BRIGHTNESS -> snapshot.maxBrightness() < 0;
+                case STATE -> snapshot.state() == null;
+                default -> snapshot.lastError() == null;
+            };
+        }
+
+        @Override
+        public int getType(int column) {
+            if (isNull(column)) {
+                return FIELD_TYPE_NULL;
+            }
+
+            return switch (columnIds[column]) {
+                case CUR_BRIGHTNESS, MAX_BRIGHTNESS -> FIELD_TYPE_INTEGER;
+                default -> FIELD_TYPE_STRING;
+            };
+        }
+    }
+}
@@ -11,27 +11,46 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.os.IBinder;
+import android.os.Trace;
 import android.service.quicksettings.Tile;
 import android.service.quicksettings.TileService;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
-/** Quick settings tile for toggling the torch status. The last selected brightness is used. */
-public class TorchTileService extends TileService implements ServiceConnection, TorchSession.Listener {
+import com.chiller3.pixellight.core.TorchError;
+
+/**
+ * Quick settings tile for toggling the torch status. The last selected brightness is used.
+ *
+ * <p>Opening the quick settings panel should cost almost nothing when the torch is off, so the
+ * state is read from {@link TorchStatus} and the cached camera details instead of binding to
+ * {@link TorchService}. The service is only bound while it is in the foreground, which is the only
+ * time that the tile can control it directly, or when no camera details are cached yet. The tile
+ * only asks the service to pre-warm while bound. See {@link TorchSession#prewarm(boolean)}.
+ */
+public class TorchTileService extends TileService implements ServiceConnection,
+        TorchSession.Listener, TorchStatus.Listener {
     private static final String TAG = TorchTileService.class.getSimpleName();
 
+    private Preferences prefs;
     private TorchService.TorchBinder torchBinder;
-    private int curBrightness = -1;
+    private boolean bound = false;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        prefs = new Preferences(this);
+    }
 
     @Override
     public void onStartListening() {
         super.onStartListening();
         Log.d(TAG, "Tile is listening");
 
-        final var intent = new Intent(this, TorchService.class);
-        bindService(intent, this, Context.BIND_AUTO_CREATE);
-
+        TorchStatus.registerListener(this);
+        updateBinding();
         refreshTileState();
     }
 
@@ -40,14 +59,55 @@ public class TorchTileService extends TileService implements ServiceConnection,
         super.onStopListening();
         Log.d(TAG, "Tile is no longer listening");
 
+        TorchStatus.unregisterListener(this);
+        unbind();
+    }
+
+    /**
+     * Get the current brightness or -1 if it is not known yet. If no session has reported the
+     * state since the process started, then the torch is off as long as a camera was found before.
+     */
+    private int getCurBrightness() {
+        final var brightness = TorchStatus.getBrightness();
+        if (brightness >= 0) {
+            return brightness;
+        }
+
+        return prefs.getCameraDetails() != null ? 0 : -1;
+    }
+
+    private void updateBinding() {
+        final var needed = TorchStatus.isServiceInForeground() || getCurBrightness() < 0;
+
+        if (needed && !bound) {
+            Log.d(TAG, "Binding to service");
+
+            final var intent = new Intent(this, TorchService.class);
+            bound = bindService(intent, this, Context.BIND_AUTO_CREATE);
+        } else if (!needed && bound) {
+            Log.d(TAG, "Unbinding from service");
+            unbind();
+        }
+    }
+
+    private void unbind() {
         onBinderGone();
-        unbindService(this);
+
+        if (bound) {
+            unbindService(this);
+            bound = false;
+        }
     }
 
     @Override
     public void onServiceConnected(ComponentName name, IBinder service) {
         torchBinder = (TorchService.TorchBinder) service;
+        // This discovers the cameras if the details are not cached.
         torchBinder.registerTorchListener(this);
+
+        // The panel was just opened, so the user might be about to tap the tile. The camera can
+        // only be opened from here if the service is already in the foreground.
+        torchBinder.prewarm(torchBinder.isInForeground());
     }
 
     @Override
@@ -65,6 +125,16 @@ public class TorchTileService extends TileService implements ServiceConnection,
 
     @Override
     public void onClick() {
+        Trace.beginSection("TorchTileService.onClick");
+
+        try {
+            onClickTraced();
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private void onClickTraced() {
         super.onClick();
 
         // With Android 15, it is no longer process to start a foreground service that relies on
@@ -72,9 +142,10 @@ public class TorchTileService extends TileService implements ServiceConnection,
         // We have no choice but to provide a worse experience and perform the operation through an
         // activity.
 
+        final var curBrightness = getCurBrightness();
         final int newBrightness;
 
-        if (curBrightness == -1) {
+        if (curBrightness < 0) {
             Log.w(TAG, "onClick was reachable before camera session was ready");
             return;
         } else if (curBrightness == 0) {
@@ -85,19 +156,22 @@ public class TorchTileService extends TileService implements ServiceConnection,
             newBrightness = 0;
         }
 
-        if (torchBinder.isInForeground()) {
+        final var request = TapLatencyTracker.Request.start(TapLatencyTracker.EntryPoint.TILE);
+
+        if (torchBinder != null && torchBinder.isInForeground()) {
             // With Android 15, we can't start a camera foreground service from a tile service
             // anymore, but we can connect to a previously started instance just fine.
-            torchBinder.setTorchBrightness(newBrightness);
+            torchBinder.setTorchBrightness(newBrightness, TorchSession.FADE_DEFAULT, request);
         } else {
             final var intent = ToggleActivity.createIntent(this, newBrightness);
+            request.putExtras(intent);
 
             startActivityAndCollapse(PendingIntent.getActivity(
                     this, 0, intent,
                     PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT));
         }
 
-        // The tile state will be changed when onTorchStateChanged() is called.
+        // The tile state will be changed when onTorchStatusChanged() is called.
     }
 
     private void refreshTileState() {
@@ -107,6 +181,8 @@ public class TorchTileService extends TileService implements ServiceConnection,
             return;
         }
 
+        final var curBrightness = getCurBrightness();
+
         if (curBrightness < 0) {
             tile.setState(Tile.STATE_UNAVAILABLE);
         } else if (curBrightness == 0) {
@@ -120,11 +196,25 @@ public class TorchTileService extends TileService implements ServiceConnection,
 
     @Override
     public void onTorchStateChanged(int curBrightness, int maxBrightness) {
-        Log.d(TAG, "New torch state: current=" + curBrightness + ", max=" + maxBrightness);
-        this.curBrightness = curBrightness;
+        if (MainApplication.VERBOSE) {
+            Log.d(TAG, "New torch state: current=" + curBrightness + ", max=" + maxBrightness);
+        }
+
+        // TorchStatus is updated before the listeners are called.
         refreshTileState();
     }
 
+    @Override
+    public void onTorchStatusChanged() {
+        updateBinding();
+        refreshTileState();
+    }
+
+    @Override
+    public void onServiceForegroundChanged() {
+        updateBinding();
+    }
+
     @Override
     public void onTorchError(@NonNull TorchError error) {
         if (error == TorchError.NO_PERMISSION) {
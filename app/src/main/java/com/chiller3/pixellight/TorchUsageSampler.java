@@ -0,0 +1,142 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.chiller3.pixellight.core.CaptureCalibrator;
+
+import java.util.Arrays;
+
+/**
+ * Accounts for how the torch is used. This process's CPU time while the torch is on is tracked
+ * separately for the normal and low-power torch modes so that they can be compared. The camera
+ * HAL and camera service run in other processes, so this only captures the app's own share of
+ * the cost. The time spent at each brightness level is tracked too.
+ *
+ * <p>Nothing is sampled periodically. The CPU time is only read when the torch turns on or off
+ * and when the statistics are requested while it is on, so this costs nothing while the torch is
+ * off.
+ */
+public class TorchUsageSampler {
+    private static final String TAG = TorchUsageSampler.class.getSimpleName();
+
+    /**
+     * @param onTimeMs Total time that the torch was on
+     * @param cpuTimeMs Process CPU time used while the torch was on
+     */
+    public record Usage(long onTimeMs, long cpuTimeMs) {
+        public static final Usage ZERO = new Usage(0, 0);
+
+        @NonNull
+        private Usage plus(long onTimeMs, long cpuTimeMs) {
+            return new Usage(this.onTimeMs + onTimeMs, this.cpuTimeMs + cpuTimeMs);
+        }
+
+        /** CPU time as a percentage of one core over the time the torch was on. */
+        public double cpuPercent() {
+            return onTimeMs > 0 ? 100.0 * cpuTimeMs / onTimeMs : 0.0;
+        }
+    }
+
+    /**
+     * @param levelOnTimeMs Total time spent at each brightness level, indexed by the level. Index
+     *                      0 is unused.
+     */
+    public record Stats(@NonNull Usage normal, @NonNull Usage lowPower,
+                        @NonNull long[] levelOnTimeMs) {}
+
+    private final CaptureCalibrator.CpuClock cpuClock;
+    private Usage normal = Usage.ZERO;
+    private Usage lowPower = Usage.ZERO;
+    private long[] levelOnTimeMs = new long[0];
+    // Start of the current on interval or -1 if the torch is off.
+    private long startElapsedMs = -1;
+    private long startCpuNs;
+    private boolean startLowPower;
+    // Current brightness level and when it was set.
+    private int level = 0;
+    private long levelStartElapsedMs;
+
+    public TorchUsageSampler(@NonNull CaptureCalibrator.CpuClock cpuClock) {
+        this.cpuClock = cpuClock;
+    }
+
+    @WorkerThread
+    public void onTorchStateChanged(int curBrightness, int maxBrightness, boolean lowPowerMode) {
+        final var elapsedMs = SystemClock.elapsedRealtime();
+
+        if (maxBrightness + 1 > levelOnTimeMs.length) {
+            levelOnTimeMs = Arrays.copyOf(levelOnTimeMs, maxBrightness + 1);
+        }
+
+        if (level > 0 && level < levelOnTimeMs.length) {
+            levelOnTimeMs[level] += elapsedMs - levelStartElapsedMs;
+        }
+        level = curBrightness;
+        levelStartElapsedMs = elapsedMs;
+
+        final var on = curBrightness > 0;
+        if (on == (startElapsedMs >= 0)) {
+            return;
+        }
+
+        final var cpuNs = cpuClock.cpuTimeNs();
+
+        if (on) {
+            startElapsedMs = elapsedMs;
+            startCpuNs = cpuNs;
+            startLowPower = lowPowerMode;
+        } else {
+            final var onTimeMs = elapsedMs - startElapsedMs;
+            final var cpuTimeMs = (cpuNs - startCpuNs) / 1_000_000;
+
+            if (startLowPower) {
+                lowPower = lowPower.plus(onTimeMs, cpuTimeMs);
+            } else {
+                normal = normal.plus(onTimeMs, cpuTimeMs);
+            }
+
+            if (MainApplication.VERBOSE) {
+                Log.d(TAG, "Torch was on for " + onTimeMs + "ms using " + cpuTimeMs
+                        + "ms of CPU time (low power: " + startLowPower + ")");
+            }
+
+            startElapsedMs = -1;
+        }
+    }
+
+    /** Get the totals so far, including the current on interval. */
+    @WorkerThread
+    @NonNull
+    public Stats getStats() {
+        var normal = this.normal;
+        var lowPower = this.lowPower;
+        final var levelOnTimeMs = this.levelOnTimeMs.clone();
+
+        if (startElapsedMs >= 0) {
+            final var elapsedMs = SystemClock.elapsedRealtime();
+            final var onTimeMs = elapsedMs - startElapsedMs;
+            final var cpuTimeMs = (cpuClock.cpuTimeNs() - startCpuNs) / 1_000_000;
+
+            if (startLowPower) {
+                lowPower = lowPower.plus(onTimeMs, cpuTimeMs);
+            } else {
+                normal = normal.plus(onTimeMs, cpuTimeMs);
+            }
+
+            if (level > 0 && level < levelOnTimeMs.length) {
+                levelOnTimeMs[level] += elapsedMs - levelStartElapsedMs;
+            }
+        }
+
+        return new Stats(normal, lowPower, levelOnTimeMs);
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+// JMH benchmarks for the core module. Run with:
+//
+//     ./gradlew :benchmark:jmh
+//
+// Extra JMH arguments can be passed with -PjmhArgs, eg. -PjmhArgs="-prof gc" to measure the
+// allocation rate.
+plugins {
+    java
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    }
+}
+
+dependencies {
+    implementation(project(":simulator"))
+    compileOnly(libs.androidx.annotation)
+    implementation(libs.jmh.core)
+    annotationProcessor(libs.jmh.generator.annprocess)
+}
+
+tasks.register<JavaExec>("jmh") {
+    description = "Runs the JMH benchmarks."
+    group = "benchmark"
+
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args(providers.gradleProperty("jmhArgs").map { it.split(' ') }.getOrElse(emptyList()))
+}
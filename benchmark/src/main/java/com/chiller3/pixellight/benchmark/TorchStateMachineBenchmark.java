@@ -0,0 +1,140 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.benchmark;
+
+import androidx.annotation.NonNull;
+
+import com.chiller3.pixellight.core.CameraDetails;
+import com.chiller3.pixellight.core.TorchError;
+import com.chiller3.pixellight.core.TorchStateMachine;
+import com.chiller3.pixellight.simulator.MemorySettings;
+import com.chiller3.pixellight.simulator.SimulatedBackend;
+import com.chiller3.pixellight.simulator.VirtualScheduler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of the {@link TorchStateMachine} itself against a {@link SimulatedBackend}
+ * with no latency. Run with {@code -PjmhArgs="-prof gc"} to see the allocations per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TorchStateMachineBenchmark {
+    private static final int STORM_SIZE = 64;
+
+    @State(Scope.Thread)
+    public static class Torch {
+        @Param({"45"})
+        public int maxBrightness;
+
+        // 0 means that every level needs a camera session.
+        @Param({"0", "5"})
+        public int maxTorchStrength;
+
+        @Param({"false", "true"})
+        public boolean warmStandby;
+
+        public VirtualScheduler scheduler;
+        public SimulatedBackend backend;
+        public TorchStateMachine machine;
+        // Alternates so that every brightness change needs a capture.
+        public int level;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            scheduler = new VirtualScheduler();
+            backend = new SimulatedBackend(scheduler,
+                    new CameraDetails("0", maxBrightness, maxTorchStrength),
+                    SimulatedBackend.Config.IDEAL, 0);
+            machine = new TorchStateMachine(scheduler, backend,
+                    new MemorySettings(maxBrightness, warmStandby), new NullCallbacks(scheduler));
+
+            machine.refreshCameras();
+            scheduler.runPending();
+
+            level = maxBrightness;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class LitTorch extends Torch {
+        @Override
+        @Setup(Level.Trial)
+        public void setUp() {
+            super.setUp();
+
+            machine.submitBrightness(level);
+            scheduler.runPending();
+        }
+    }
+
+    private record NullCallbacks(@NonNull VirtualScheduler scheduler)
+            implements TorchStateMachine.Callbacks {
+        @Override
+        public void onTorchStateChanged(int curBrightness, int maxBrightness) {}
+
+        @Override
+        public void onTorchError(@NonNull TorchError error) {
+            throw new IllegalStateException("Unexpected error: " + error);
+        }
+
+        @Override
+        public void onOwnerNeeded(boolean needed) {}
+
+        @Override
+        public void runAfterOwnerUpdate(@NonNull Runnable runnable) {
+            scheduler.post(runnable);
+        }
+    }
+
+    /** Cost per command when a burst of toggles arrives before the camera thread runs. */
+    @Benchmark
+    @OperationsPerInvocation(STORM_SIZE)
+    public void commandThroughput(Torch torch) {
+        for (int i = 0; i < STORM_SIZE; ++i) {
+            torch.machine.submitBrightness(TorchStateMachine.BRIGHTNESS_TOGGLE);
+        }
+        torch.scheduler.runPending();
+    }
+
+    /** Cost of changing the brightness while the torch is already on, including the capture. */
+    @Benchmark
+    public void brightnessChange(LitTorch torch) {
+        torch.level = torch.level == torch.maxBrightness
+                ? torch.maxBrightness - 1 : torch.maxBrightness;
+        torch.machine.submitBrightness(torch.level);
+        torch.scheduler.runPending();
+    }
+
+    /**
+     * Cost of turning the torch on and back off. Without warm standby, this includes opening and
+     * closing the camera every time.
+     */
+    @Benchmark
+    public void stateTransition(Torch torch) {
+        torch.machine.submitBrightness(TorchStateMachine.BRIGHTNESS_PERSISTED);
+        torch.scheduler.runPending();
+        torch.machine.submitBrightness(0);
+        torch.scheduler.runPending();
+    }
+}
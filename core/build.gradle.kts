@@ -0,0 +1,20 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+// Platform-independent torch logic. This must not depend on the Android framework so that it can
+// be benchmarked and simulated on a regular JVM.
+plugins {
+    `java-library`
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    }
+}
+
+dependencies {
+    compileOnly(libs.androidx.annotation)
+}
@@ -0,0 +1,111 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.core;
+
+/**
+ * Picks a brightness level from the ambient light. The saved brightness is the ceiling, which is
+ * used in bright surroundings. In the dark, the level goes down to {@link #MIN_FRACTION} of it,
+ * which is usually plenty and saves power.
+ *
+ * <p>The light level is smoothed on a logarithmic scale, since that's roughly how it is perceived.
+ * A new level is only picked once the smoothed light level has moved by more than
+ * {@link #HYSTERESIS_DECADES} since the last one and at most once every
+ * {@link #MIN_ADJUST_INTERVAL_MS}, so that flickering light or the torch's own reflection can't
+ * cause a stream of captures.
+ *
+ * <p>This is not thread safe.
+ */
+public final class AdaptiveBrightness {
+    /** Light level at or below which the lowest level is used. */
+    public static final double DARK_LUX = 1;
+    /** Light level at or above which the ceiling is used. */
+    public static final double BRIGHT_LUX = 1000;
+    public static final double MIN_FRACTION = 0.25;
+    /** How far the light level must move, in powers of 10, before the level is changed. */
+    public static final double HYSTERESIS_DECADES = 0.25;
+    public static final long MIN_ADJUST_INTERVAL_MS = 5_000;
+    /** Time constant of the smoothing. */
+    public static final long SMOOTHING_MS = 2_000;
+
+    private static final double DARK_LOG = Math.log10(DARK_LUX);
+    private static final double BRIGHT_LOG = Math.log10(BRIGHT_LUX);
+
+    // Smoothed log10 of the light level or NaN if there have been no samples.
+    private double smoothedLog;
+    private long lastSampleNs;
+    // Smoothed light level and level when the level was last picked or NaN and -1 if never.
+    private double appliedLog;
+    private int appliedLevel;
+    private long appliedNs;
+
+    public AdaptiveBrightness() {
+        reset();
+    }
+
+    /** Forget all samples. The next level is picked as soon as there is a sample. */
+    public void reset() {
+        smoothedLog = Double.NaN;
+        lastSampleNs = 0;
+        appliedLog = Double.NaN;
+        appliedLevel = -1;
+        appliedNs = 0;
+    }
+
+    /**
+     * Add a light sensor sample.
+     *
+     * @param timestampNs Time of the sample. Samples must be in order.
+     * @param lux Ambient light level
+     */
+    public void addSample(long timestampNs, float lux) {
+        final var log = Math.log10(Math.max(lux, DARK_LUX));
+
+        if (Double.isNaN(smoothedLog)) {
+            smoothedLog = log;
+        } else {
+            final var dtNs = Math.max(timestampNs - lastSampleNs, 0);
+            final var alpha = 1 - Math.exp(-dtNs / (SMOOTHING_MS * 1_000_000.0));
+            smoothedLog += alpha * (log - smoothedLog);
+        }
+
+        lastSampleNs = timestampNs;
+    }
+
+    /**
+     * Get the level to switch to now.
+     *
+     * @param nowNs Current time
+     * @param ceiling Level to use in bright surroundings
+     * @return The new level or -1 to keep the current one
+     */
+    public int poll(long nowNs, int ceiling) {
+        if (Double.isNaN(smoothedLog) || ceiling <= 0) {
+            return -1;
+        } else if (appliedLevel >= 0) {
+            if (Math.abs(smoothedLog - appliedLog) < HYSTERESIS_DECADES
+                    || nowNs - appliedNs < MIN_ADJUST_INTERVAL_MS * 1_000_000) {
+                return -1;
+            }
+        }
+
+        final var level = levelFor(smoothedLog, ceiling);
+        final var changed = level != appliedLevel;
+
+        appliedLog = smoothedLog;
+        appliedLevel = level;
+        appliedNs = nowNs;
+
+        return changed ? level : -1;
+    }
+
+    /** Get the level for a light level of {@code 10^log} lux. */
+    private static int levelFor(double log, int ceiling) {
+        final var position = Math.min(Math.max((log - DARK_LOG) / (BRIGHT_LOG - DARK_LOG), 0), 1);
+        final var fraction = MIN_FRACTION + (1 - MIN_FRACTION) * position;
+
+        return Math.max((int) Math.round(ceiling * fraction), 1);
+    }
+}
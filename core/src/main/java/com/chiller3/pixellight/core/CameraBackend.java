@@ -0,0 +1,154 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.core;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * The camera stack that a {@link TorchStateMachine} drives. The app implements this with camera2.
+ *
+ * <p>Unless noted otherwise, methods are called from the state machine's {@link Scheduler} thread
+ * and all callbacks must be invoked on that same thread.
+ */
+public interface CameraBackend {
+    /**
+     * Find the camera that supports the private Pixel flashlight brightness control.
+     *
+     * @return The camera details or null if there is no suitable camera
+     */
+    @WorkerThread
+    @Nullable
+    CameraDetails queryCameraDetails() throws CameraException;
+
+    /** Turn on the torch with the standard torch strength API. */
+    @WorkerThread
+    void turnOnTorch(@NonNull String cameraId, int strength) throws CameraException;
+
+    @WorkerThread
+    void turnOffTorch(@NonNull String cameraId) throws CameraException;
+
+    @AnyThread
+    void registerTorchCallback(@NonNull TorchCallback callback);
+
+    @AnyThread
+    void unregisterTorchCallback(@NonNull TorchCallback callback);
+
+    /**
+     * Start opening a camera device. Exactly one of {@link DeviceCallback#onOpened(Device)} or
+     * {@link DeviceCallback#onError(Device, TorchError)} is invoked afterwards unless this throws.
+     * A {@link TorchError#NO_VALID_CAMERA} failure means that the camera no longer exists.
+     */
+    @WorkerThread
+    void openCamera(@NonNull String cameraId, @NonNull DeviceCallback callback)
+            throws CameraException;
+
+    interface Device {
+        @NonNull
+        String getId();
+
+        /**
+         * Start configuring a capture session that can capture brightness levels up to
+         * {@code maxBrightness} with the specified strategy. Creating a new session closes the
+         * previous one.
+         */
+        @WorkerThread
+        void createSession(int maxBrightness, @NonNull CaptureStrategy strategy,
+                           @NonNull SessionCallback callback) throws CameraException;
+
+        /** Close the device. This also closes its session. It is safe to call more than once. */
+        @WorkerThread
+        void close();
+    }
+
+    interface Session {
+        /** Build and cache the capture request for a brightness level ahead of time. */
+        @WorkerThread
+        void prepare(int brightness);
+
+        /**
+         * Apply a brightness level with the session's {@link CaptureStrategy}. 0 turns the torch
+         * off. Completion is reported to the {@link SessionCallback} exactly once per call, when
+         * the camera has applied the level or failed to.
+         */
+        @WorkerThread
+        void capture(int brightness) throws CameraException;
+
+        /** Shortest frame duration that the session can run at. */
+        @WorkerThread
+        long getMinFrameDurationNs();
+
+        /**
+         * Play one brightness level per frame at a fixed frame duration, replacing whatever the
+         * session was doing. The frames are submitted to the camera up front so that the sensor,
+         * not the caller, paces them. A repeating pattern loops until the next call to this or to
+         * {@link #capture(int)}, which stops it. Results of a stopped pattern are not reported.
+         */
+        @WorkerThread
+        void playPattern(@NonNull int[] levels, long frameDurationNs, boolean repeat,
+                         @NonNull PatternCallback callback) throws CameraException;
+    }
+
+    /** Flash state reported in a capture result. */
+    enum FlashState {
+        /** The camera did not report the flash state. */
+        UNKNOWN,
+        OFF,
+        /** The torch is lit. */
+        ON,
+    }
+
+    interface PatternCallback {
+        /**
+         * A frame of a pattern finished. Frames are numbered from 0 and keep counting across
+         * loops. {@code timestampNs} is the sensor start of exposure timestamp of the frame or -1
+         * if the capture failed.
+         */
+        @WorkerThread
+        void onPatternFrame(@NonNull Session session, long frameNumber, long timestampNs);
+
+        /** The last frame of a non-repeating pattern finished. */
+        @WorkerThread
+        void onPatternFinished(@NonNull Session session);
+    }
+
+    interface TorchCallback {
+        @WorkerThread
+        void onTorchModeChanged(@NonNull String cameraId, boolean enabled);
+
+        @WorkerThread
+        void onTorchModeUnavailable(@NonNull String cameraId);
+    }
+
+    interface DeviceCallback {
+        @WorkerThread
+        void onOpened(@NonNull Device device);
+
+        @WorkerThread
+        void onDisconnected(@NonNull Device device);
+
+        @WorkerThread
+        void onError(@NonNull Device device, @NonNull TorchError error);
+    }
+
+    interface SessionCallback {
+        @WorkerThread
+        void onConfigured(@NonNull Session session);
+
+        @WorkerThread
+        void onConfigureFailed(@NonNull Session session);
+
+        /** The level was applied. {@code flashState} is from the last result of the request. */
+        @WorkerThread
+        void onCaptureCompleted(@NonNull Session session, @NonNull FlashState flashState);
+
+        /** The capture failed or was aborted. */
+        @WorkerThread
+        void onCaptureFailed(@NonNull Session session);
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.core;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Details about the camera used for the torch.
+ *
+ * @param cameraId ID of the camera with the flashlight brightness control
+ * @param maxBrightness Highest level supported by the private Pixel API
+ * @param maxTorchStrength Highest level supported by the standard torch strength API or 0 if
+ *                         unsupported
+ */
+public record CameraDetails(@NonNull String cameraId, int maxBrightness, int maxTorchStrength) {}
@@ -0,0 +1,26 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/** Failure reported by a {@link CameraBackend}, already mapped to a {@link TorchError}. */
+public class CameraException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final TorchError error;
+
+    public CameraException(@NonNull TorchError error, @Nullable Throwable cause) {
+        super(error.name(), cause);
+        this.error = error;
+    }
+
+    @NonNull
+    public TorchError getError() {
+        return error;
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures every {@link CaptureStrategy} on a camera and picks the cheapest one that holds the
+ * requested brightness. Each strategy gets its own session on a single camera device. The torch is
+ * turned on at the requested brightness, held for a fixed window, and then turned off again. The
+ * CPU time used from the start of the window until the torch is confirmed to be off again is what
+ * the strategies are compared by.
+ *
+ * <p>A strategy only qualifies if every capture it submitted completed. The camera must not be
+ * used by anything else during the calibration. If another client takes it over, the calibration
+ * fails with {@link TorchError#DISCONNECTED}.
+ *
+ * <p>Everything must be called from the {@link Scheduler} thread and the {@link Listener} is
+ * invoked on that thread too.
+ */
+public class CaptureCalibrator {
+    private static final String TAG = CaptureCalibrator.class.getSimpleName();
+
+    /** Default duration that each strategy holds the torch on for. */
+    public static final long DEFAULT_WINDOW_MS = 2000;
+    private static final int MAX_RETRIES = 3;
+
+    private enum Phase {
+        OPENING,
+        CONFIGURING,
+        HOLDING,
+        TURNING_OFF,
+        DONE,
+    }
+
+    /** Source of the CPU time used by the process that talks to the camera. */
+    public interface CpuClock {
+        @WorkerThread
+        long cpuTimeNs();
+    }
+
+    /**
+     * @param cpuTimeNs CPU time used from turning the torch on until it was confirmed to be off
+     * @param confirmLatencyNs Time until the first capture completed or -1 if it never did
+     * @param failures Number of captures that failed
+     */
+    public record Measurement(
+            @NonNull CaptureStrategy strategy,
+            long cpuTimeNs,
+            long confirmLatencyNs,
+            int failures
+    ) {
+        public boolean holdsBrightness() {
+            return confirmLatencyNs >= 0 && failures == 0;
+        }
+    }
+
+    /**
+     * @param measurements Measurement for each strategy, in {@link CaptureStrategy} order
+     * @param best Cheapest strategy that holds the brightness or null if none did
+     */
+    public record Result(@NonNull List<Measurement> measurements, @Nullable CaptureStrategy best) {}
+
+    public interface Listener {
+        @WorkerThread
+        void onCalibrationFinished(@NonNull Result result);
+
+        @WorkerThread
+        void onCalibrationFailed(@NonNull TorchError error);
+    }
+
+    private final Scheduler scheduler;
+    private final CameraBackend backend;
+    private final CpuClock cpuClock;
+    private final CameraDetails details;
+    private final int brightness;
+    private final long windowMs;
+    private final Listener listener;
+    private final Runnable windowEnd = this::onWindowEnd;
+    private final ArrayList<Measurement> measurements = new ArrayList<>();
+
+    private Phase phase = Phase.OPENING;
+    private CameraBackend.Device device;
+    private CameraBackend.Session session;
+    private int strategyIndex = 0;
+    private long cpuStartNs;
+    private long submitNs;
+    private long confirmLatencyNs;
+    private int failures;
+    private boolean captureInFlight;
+    private boolean offSubmitted;
+
+    public CaptureCalibrator(@NonNull Scheduler scheduler, @NonNull CameraBackend backend,
+                             @NonNull CpuClock cpuClock, @NonNull CameraDetails details,
+                             int brightness, long windowMs, @NonNull Listener listener) {
+        this.scheduler = scheduler;
+        this.backend = backend;
+        this.cpuClock = cpuClock;
+        this.details = details;
+        this.brightness = brightness;
+        this.windowMs = windowMs;
+        this.listener = listener;
+    }
+
+    @WorkerThread
+    public void start() {
+        Log.d(TAG, "Calibrating capture strategies at brightness " + brightness);
+
+        try {
+            backend.openCamera(details.cameraId(), new CameraBackend.DeviceCallback() {
+                @Override
+                public void onOpened(@NonNull CameraBackend.Device device) {
+                    if (phase == Phase.DONE) {
+                        device.close();
+                        return;
+                    }
+
+                    CaptureCalibrator.this.device = device;
+                    nextStrategy();
+                }
+
+                @Override
+                public void onDisconnected(@NonNull CameraBackend.Device device) {
+                    fail(TorchError.DISCONNECTED);
+                }
+
+                @Override
+                public void onError(@NonNull CameraBackend.Device device,
+                                    @NonNull TorchError error) {
+                    if (CaptureCalibrator.this.device == null) {
+                        device.close();
+                    }
+                    fail(error);
+                }
+            });
+        } catch (CameraException e) {
+            Log.e(TAG, "Failed to open camera", e);
+            fail(e.getError());
+        }
+    }
+
+    /** Stop the calibration without notifying the listener. */
+    @WorkerThread
+    public void cancel() {
+        if (phase != Phase.DONE) {
+            Log.d(TAG, "Calibration cancelled");
+            finish();
+        }
+    }
+
+    @WorkerThread
+    private void finish() {
+        phase = Phase.DONE;
+        session = null;
+        scheduler.removeCallbacks(windowEnd);
+
+        if (device != null) {
+            device.close();
+            device = null;
+        }
+    }
+
+    @WorkerThread
+    private void fail(@NonNull TorchError error) {
+        if (phase == Phase.DONE) {
+            return;
+        }
+
+        Log.w(TAG, "Calibration failed: " + error);
+
+        finish();
+        listener.onCalibrationFailed(error);
+    }
+
+    @WorkerThread
+    private void nextStrategy() {
+        final var strategies = CaptureStrategy.values();
+
+        if (strategyIndex == strategies.length) {
+            finish();
+
+            CaptureStrategy best = null;
+            long bestCpuTimeNs = Long.MAX_VALUE;
+
+            for (final var measurement : measurements) {
+                if (measurement.holdsBrightness() && measurement.cpuTimeNs() < bestCpuTimeNs) {
+                    best = measurement.strategy();
+                    bestCpuTimeNs = measurement.cpuTimeNs();
+                }
+            }
+
+            final var result = new Result(Collections.unmodifiableList(measurements), best);
+            Log.d(TAG, "Calibration finished: " + result);
+
+            listener.onCalibrationFinished(result);
+            return;
+        }
+
+        final var strategy = strategies[strategyIndex];
+        phase = Phase.CONFIGURING;
+        session = null;
+        confirmLatencyNs = -1;
+        failures = 0;
+        captureInFlight = false;
+        offSubmitted = false;
+
+        try {
+            device.createSession(details.maxBrightness(), strategy,
+                    new CameraBackend.SessionCallback() {
+                        @Override
+                        public void onConfigured(@NonNull CameraBackend.Session session) {
+                            if (phase == Phase.CONFIGURING && strategyIndex == strategy.ordinal()) {
+                                onSessionConfigured(session);
+                            }
+                        }
+
+                        @Override
+                        public void onConfigureFailed(@NonNull CameraBackend.Session session) {
+                            if (phase == Phase.CONFIGURING && strategyIndex == strategy.ordinal()) {
+                                fail(TorchError.SESSION_ERROR);
+                            }
+                        }
+
+                        @Override
+                        public void onCaptureCompleted(@NonNull CameraBackend.Session session,
+                                                       @NonNull CameraBackend.FlashState state) {
+                            if (session == CaptureCalibrator.this.session) {
+                                onCaptureFinished(true);
+                            }
+                        }
+
+                        @Override
+                        public void onCaptureFailed(@NonNull CameraBackend.Session session) {
+                            if (session == CaptureCalibrator.this.session) {
+                                onCaptureFinished(false);
+                            }
+                        }
+                    });
+        } catch (CameraException e) {
+            Log.e(TAG, "Failed to create session for " + strategy, e);
+            fail(e.getError());
+        }
+    }
+
+    @WorkerThread
+    private void onSessionConfigured(@NonNull CameraBackend.Session session) {
+        this.session = session;
+        phase = Phase.HOLDING;
+        cpuStartNs = cpuClock.cpuTimeNs();
+        submitNs = scheduler.nanoTime();
+
+        capture(brightness);
+        scheduler.postDelayed(windowEnd, windowMs);
+    }
+
+    @WorkerThread
+    private void onWindowEnd() {
+        if (phase == Phase.HOLDING) {
+            phase = Phase.TURNING_OFF;
+
+            // Otherwise, this happens once the in-flight capture finishes.
+            if (!captureInFlight) {
+                turnOff();
+            }
+        }
+    }
+
+    @WorkerThread
+    private void turnOff() {
+        offSubmitted = true;
+        capture(0);
+    }
+
+    @WorkerThread
+    private void capture(int brightness) {
+        try {
+            captureInFlight = true;
+            session.capture(brightness);
+        } catch (CameraException e) {
+            Log.e(TAG, "Failed to submit capture", e);
+            fail(e.getError());
+        }
+    }
+
+    @WorkerThread
+    private void onCaptureFinished(boolean success) {
+        captureInFlight = false;
+
+        if (!success) {
+            ++failures;
+        }
+
+        switch (phase) {
+            case HOLDING -> {
+                if (success && confirmLatencyNs < 0) {
+                    confirmLatencyNs = scheduler.nanoTime() - submitNs;
+                } else if (!success && confirmLatencyNs < 0 && failures <= MAX_RETRIES) {
+                    // Keep trying so that the torch is actually on for the rest of the window.
+                    capture(brightness);
+                }
+            }
+            case TURNING_OFF -> {
+                if (!offSubmitted) {
+                    // Finished capture was from the window.
+                    if (success && confirmLatencyNs < 0) {
+                        confirmLatencyNs = scheduler.nanoTime() - submitNs;
+                    }
+                    turnOff();
+                    return;
+                }
+
+                final var measurement = new Measurement(
+                        CaptureStrategy.values()[strategyIndex],
+                        cpuClock.cpuTimeNs() - cpuStartNs,
+                        confirmLatencyNs,
+                        failures);
+                Log.d(TAG, "Measured " + measurement);
+
+                measurements.add(measurement);
+                ++strategyIndex;
+
+                // If turning the torch off failed, the next session or closing the device turns
+                // it off instead.
+                nextStrategy();
+            }
+            default -> {}
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.core;
+
+/**
+ * How a {@link CameraBackend.Session} applies a brightness level. Which one is cheapest depends on
+ * the device and camera HAL, so {@link CaptureCalibrator} can measure them.
+ */
+public enum CaptureStrategy {
+    /** Submit a single capture request per brightness change. */
+    SINGLE,
+    /**
+     * Keep a repeating request for the current brightness level running while the torch is on.
+     * Turning the torch off stops the repeating request and submits a single capture.
+     */
+    REPEATING,
+    /** Submit a burst of {@link #BURST_SIZE} identical capture requests per brightness change. */
+    BURST;
+
+    public static final int BURST_SIZE = 3;
+}
@@ -0,0 +1,111 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram. Values below {@link #SUB_BUCKETS}
+ * microseconds are exact. Above that, every power of 2 is split into {@link #SUB_BUCKETS} equal
+ * buckets, so percentiles are accurate to about 3% regardless of magnitude. Recording a value does
+ * not allocate.
+ *
+ * <p>This is not thread safe.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values are clamped to just over 19 hours.
+    private static final int MAX_VALUE_BITS = 36;
+    private static final long MAX_VALUE_US = (1L << MAX_VALUE_BITS) - 1;
+
+    private final long[] counts = new long[(MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+    private long totalCount;
+    private long totalUs;
+    private long maxUs;
+
+    private static int bucketIndex(long valueUs) {
+        if (valueUs < SUB_BUCKETS) {
+            return (int) valueUs;
+        }
+
+        final var shift = 63 - Long.numberOfLeadingZeros(valueUs) - SUB_BUCKET_BITS;
+        final var subBucket = (int) (valueUs >>> shift) - SUB_BUCKETS;
+
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /** Highest value that falls into the bucket at {@code index}. */
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        final var shift = index / SUB_BUCKETS - 1;
+        final var subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((long) (subBucket + 1) << shift) - 1;
+    }
+
+    public void record(long valueUs) {
+        final var clamped = Math.max(0, Math.min(valueUs, MAX_VALUE_US));
+
+        ++counts[bucketIndex(clamped)];
+        ++totalCount;
+        totalUs += clamped;
+        maxUs = Math.max(maxUs, clamped);
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getTotalUs() {
+        return totalUs;
+    }
+
+    public long getMaxUs() {
+        return maxUs;
+    }
+
+    /**
+     * Get the value that {@code percentile} percent of the recorded values are at or below. This
+     * is the upper bound of the bucket that the value falls into, capped to the maximum.
+     */
+    public long getPercentileUs(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        final var target = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; ++i) {
+            seen += counts[i];
+
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), maxUs);
+            }
+        }
+
+        return maxUs;
+    }
+
+    /** Summarize the distribution as the count and the p50, p90, p99, and max in milliseconds. */
+    @NonNull
+    @Override
+    public String toString() {
+        if (totalCount == 0) {
+            return "n=0";
+        }
+
+        return String.format(Locale.ROOT, "n=%d, p50=%.1fms, p90=%.1fms, p99=%.1fms, max=%.1fms",
+                totalCount, getPercentileUs(50) / 1000.0, getPercentileUs(90) / 1000.0,
+                getPercentileUs(99) / 1000.0, maxUs / 1000.0);
+    }
+}
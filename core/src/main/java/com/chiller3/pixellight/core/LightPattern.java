@@ -0,0 +1,318 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A signalling pattern, like a strobe or Morse code. A pattern is a list of step durations that
+ * alternate between on and off, starting with on, and either plays once or loops.
+ *
+ * <p>Patterns are not timed by the app. {@link #plan(long)} turns a pattern into a fixed sequence
+ * of equally long camera frames, so the sensor clock paces every edge and a loop never drifts.
+ */
+public final class LightPattern {
+    /** Highest strobe frequency. Faster strobes can't be represented at common frame rates. */
+    public static final double MAX_STROBE_HZ = 15;
+    public static final int DEFAULT_MORSE_UNIT_MS = 200;
+    /** Upper bound on the frames of a plan. Longer patterns get longer frames instead. */
+    public static final int MAX_FRAMES = 512;
+    /** Value in {@link FramePlan#edgeOffsetsNs()} for frames that don't start a step. */
+    public static final long NO_EDGE = -1;
+
+    private static final String SPEC_STROBE = "strobe";
+    private static final String SPEC_SOS = "sos";
+    private static final String SPEC_MORSE = "morse";
+
+    // Dots and dashes for A-Z followed by 0-9.
+    private static final String[] MORSE_CODE = {
+            ".-", "-...", "-.-.", "-..", ".", "..-.", "--.", "....", "..", ".---", "-.-", ".-..",
+            "--", "-.", "---", ".--.", "--.-", ".-.", "...", "-", "..-", "...-", ".--", "-..-",
+            "-.--", "--..",
+            "-----", ".----", "..---", "...--", "....-", ".....", "-....", "--...", "---..",
+            "----.",
+    };
+
+    private final String spec;
+    // Alternating on and off step durations, starting with on.
+    private final long[] stepsNs;
+    private final long durationNs;
+    private final boolean repeat;
+
+    private LightPattern(@NonNull String spec, @NonNull long[] stepsNs, boolean repeat) {
+        if (stepsNs.length == 0) {
+            throw new IllegalArgumentException("Pattern has no steps");
+        }
+
+        long durationNs = 0;
+        for (final var stepNs : stepsNs) {
+            if (stepNs <= 0) {
+                throw new IllegalArgumentException("Invalid step duration: " + stepNs);
+            }
+            durationNs += stepNs;
+        }
+
+        this.spec = spec;
+        this.stepsNs = stepsNs;
+        this.durationNs = durationNs;
+        this.repeat = repeat;
+    }
+
+    /** Square wave at {@code hz} with equally long on and off steps. */
+    @NonNull
+    public static LightPattern strobe(double hz, boolean repeat) {
+        if (!(hz > 0 && hz <= MAX_STROBE_HZ)) {
+            throw new IllegalArgumentException("Strobe frequency out of range: " + hz);
+        }
+
+        final var periodNs = Math.round(1_000_000_000 / hz);
+        final var onNs = periodNs / 2;
+
+        return new LightPattern(SPEC_STROBE + ":" + hz, new long[] { onNs, periodNs - onNs },
+                repeat);
+    }
+
+    @NonNull
+    public static LightPattern sos(boolean repeat) {
+        return morse(SPEC_SOS, "SOS", DEFAULT_MORSE_UNIT_MS, repeat);
+    }
+
+    /**
+     * Morse code for {@code text} with the standard timings: a dot is one unit, a dash is three,
+     * and the gaps between symbols, letters, and words are one, three, and seven units. A looping
+     * pattern is followed by a word gap. Only letters, digits, and spaces are supported. The text
+     * can be at most {@link #MAX_FRAMES} units long so that every step fits into a plan.
+     */
+    @NonNull
+    public static LightPattern morse(@NonNull String text, int unitMs, boolean repeat) {
+        return morse(SPEC_MORSE + ":" + text, text, unitMs, repeat);
+    }
+
+    @NonNull
+    private static LightPattern morse(@NonNull String spec, @NonNull String text, int unitMs,
+                                      boolean repeat) {
+        if (unitMs <= 0) {
+            throw new IllegalArgumentException("Invalid Morse unit: " + unitMs);
+        }
+
+        final var words = text.trim().toUpperCase(Locale.ROOT).split(" +");
+        // Units of each step. A letter has at most 5 symbols, each followed by a gap.
+        final var units = new int[text.length() * 10 + 1];
+        int count = 0;
+
+        for (final var word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+
+            for (int i = 0; i < word.length(); ++i) {
+                final var c = word.charAt(i);
+                final String code;
+
+                if (c >= 'A' && c <= 'Z') {
+                    code = MORSE_CODE[c - 'A'];
+                } else if (c >= '0' && c <= '9') {
+                    code = MORSE_CODE[26 + c - '0'];
+                } else {
+                    throw new IllegalArgumentException("Unsupported Morse character: " + c);
+                }
+
+                for (int j = 0; j < code.length(); ++j) {
+                    units[count++] = code.charAt(j) == '-' ? 3 : 1;
+                    units[count++] = 1;
+                }
+
+                // Widen the last symbol gap to a letter gap.
+                units[count - 1] = 3;
+            }
+
+            // Widen the last letter gap to a word gap.
+            units[count - 1] = 7;
+        }
+
+        if (count == 0) {
+            throw new IllegalArgumentException("Empty Morse text");
+        } else if (!repeat) {
+            // The torch turns off when the pattern finishes anyway.
+            --count;
+        }
+
+        int totalUnits = 0;
+        for (int i = 0; i < count; ++i) {
+            totalUnits += units[i];
+        }
+
+        // Otherwise, a plan would need frames longer than a unit and the dots would vanish.
+        if (totalUnits > MAX_FRAMES) {
+            throw new IllegalArgumentException(
+                    "Morse text is too long: " + totalUnits + " > " + MAX_FRAMES + " units");
+        }
+
+        final var stepsNs = new long[count];
+        for (int i = 0; i < count; ++i) {
+            stepsNs[i] = units[i] * unitMs * 1_000_000L;
+        }
+
+        return new LightPattern(spec, stepsNs, repeat);
+    }
+
+    /**
+     * Parse a pattern from its string form, as used by external intents: {@code strobe:<hz>},
+     * {@code sos}, or {@code morse:<text>}.
+     *
+     * @throws IllegalArgumentException if the spec is not valid
+     */
+    @NonNull
+    public static LightPattern parse(@NonNull String spec, boolean repeat) {
+        final var colon = spec.indexOf(':');
+        final var type = (colon < 0 ? spec : spec.substring(0, colon)).toLowerCase(Locale.ROOT);
+        final var arg = colon < 0 ? null : spec.substring(colon + 1);
+
+        switch (type) {
+            case SPEC_STROBE -> {
+                if (arg == null) {
+                    throw new IllegalArgumentException("Missing strobe frequency: " + spec);
+                }
+
+                final double hz;
+                try {
+                    hz = Double.parseDouble(arg);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid strobe frequency: " + spec, e);
+                }
+
+                return strobe(hz, repeat);
+            }
+            case SPEC_SOS -> {
+                return sos(repeat);
+            }
+            case SPEC_MORSE -> {
+                if (arg == null) {
+                    throw new IllegalArgumentException("Missing Morse text: " + spec);
+                }
+
+                return morse(arg, DEFAULT_MORSE_UNIT_MS, repeat);
+            }
+            default -> throw new IllegalArgumentException("Unknown pattern: " + spec);
+        }
+    }
+
+    /** Length of one pass through the pattern. */
+    public long getDurationNs() {
+        return durationNs;
+    }
+
+    public boolean isRepeating() {
+        return repeat;
+    }
+
+    /** Index of the frame that a step boundary is rounded to when split into {@code frames}. */
+    private int frameOf(long boundaryNs, int frames) {
+        return (int) ((boundaryNs * frames + durationNs / 2) / durationNs);
+    }
+
+    /**
+     * Get the largest distance between a step boundary and the frame boundary it is rounded to
+     * when split into {@code frames} or {@link Long#MAX_VALUE} if a step would vanish.
+     */
+    private long maxEdgeErrorNs(int frames) {
+        long maxErrorNs = 0;
+        long boundaryNs = 0;
+        int prevFrame = 0;
+
+        for (final var stepNs : stepsNs) {
+            boundaryNs += stepNs;
+
+            final var frame = frameOf(boundaryNs, frames);
+            if (frame <= prevFrame) {
+                return Long.MAX_VALUE;
+            }
+
+            maxErrorNs = Math.max(maxErrorNs,
+                    Math.abs(frame * durationNs - boundaryNs * frames) / frames);
+            prevFrame = frame;
+        }
+
+        return maxErrorNs;
+    }
+
+    /**
+     * Split the pattern into frames for a camera that can't run frames shorter than
+     * {@code minFrameDurationNs}.
+     *
+     * <p>The frame duration is the pattern duration divided by a whole number of frames, so a
+     * looping pattern restarts on a frame boundary and the only drift left is from rounding the
+     * frame duration to a whole nanosecond. Each step boundary is placed on the closest frame
+     * boundary. Fewer, longer frames are used if that places the edges more precisely, like two
+     * frames for a strobe at a little under half the frame rate, but never less than half as many.
+     *
+     * @throws IllegalArgumentException if a step would be shorter than a frame
+     */
+    @NonNull
+    public FramePlan plan(long minFrameDurationNs) {
+        if (minFrameDurationNs <= 0) {
+            throw new IllegalArgumentException("Invalid frame duration: " + minFrameDurationNs);
+        }
+
+        final var maxFrames = (int) Math.max(1,
+                Math.min(durationNs / minFrameDurationNs, MAX_FRAMES));
+        int frames = 0;
+        long bestErrorNs = Long.MAX_VALUE;
+
+        for (int n = maxFrames; n >= (maxFrames + 1) / 2 && bestErrorNs > 0; --n) {
+            final var errorNs = maxEdgeErrorNs(n);
+            if (errorNs < bestErrorNs) {
+                frames = n;
+                bestErrorNs = errorNs;
+            }
+        }
+
+        if (frames == 0) {
+            throw new IllegalArgumentException(
+                    this + " has steps shorter than a frame of " + minFrameDurationNs + "ns");
+        }
+
+        final var lit = new boolean[frames];
+        final var edgeOffsetsNs = new long[frames];
+        Arrays.fill(edgeOffsetsNs, NO_EDGE);
+
+        long stepStartNs = 0;
+        int startFrame = 0;
+
+        for (int i = 0; i < stepsNs.length; ++i) {
+            final var stepEndNs = stepStartNs + stepsNs[i];
+            final var endFrame = frameOf(stepEndNs, frames);
+
+            Arrays.fill(lit, startFrame, endFrame, i % 2 == 0);
+            edgeOffsetsNs[startFrame] = stepStartNs;
+
+            stepStartNs = stepEndNs;
+            startFrame = endFrame;
+        }
+
+        return new FramePlan(durationNs / frames, lit, edgeOffsetsNs);
+    }
+
+    @Override
+    @NonNull
+    public String toString() {
+        return spec + (repeat ? " (repeating)" : "");
+    }
+
+    /**
+     * A pattern split into equally long frames.
+     *
+     * @param frameDurationNs Duration of every frame
+     * @param lit Whether the torch is lit during each frame
+     * @param edgeOffsetsNs Ideal start time of the step that begins on each frame, relative to the
+     *                      start of the pass, or {@link #NO_EDGE}
+     */
+    public record FramePlan(long frameDurationNs, @NonNull boolean[] lit,
+                            @NonNull long[] edgeOffsetsNs) {}
+}
@@ -0,0 +1,71 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.core;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Minimal stand-in for {@code android.util.Log} so that the core module does not depend on the
+ * Android framework. Nothing is logged until a {@link Sink} is installed.
+ */
+public final class Log {
+    // Same values as android.util.Log.
+    public static final int DEBUG = 3;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    /**
+     * Whether to log per-command and per-capture debug messages. This is a compile-time constant
+     * so that the guarded calls, including their string concatenation, are removed entirely from
+     * normal builds. The {@link TraceBuffer} records the same events without allocating.
+     */
+    public static final boolean VERBOSE = false;
+
+    public interface Sink {
+        @AnyThread
+        void println(int priority, @NonNull String tag, @NonNull String msg,
+                     @Nullable Throwable tr);
+    }
+
+    private static volatile Sink sink = null;
+
+    private Log() {}
+
+    @AnyThread
+    public static void setSink(@Nullable Sink sink) {
+        Log.sink = sink;
+    }
+
+    private static void println(int priority, @NonNull String tag, @NonNull String msg,
+                                @Nullable Throwable tr) {
+        final var sink = Log.sink;
+        if (sink != null) {
+            sink.println(priority, tag, msg, tr);
+        }
+    }
+
+    public static void d(@NonNull String tag, @NonNull String msg) {
+        println(DEBUG, tag, msg, null);
+    }
+
+    public static void w(@NonNull String tag, @NonNull String msg) {
+        println(WARN, tag, msg, null);
+    }
+
+    public static void w(@NonNull String tag, @NonNull String msg, @Nullable Throwable tr) {
+        println(WARN, tag, msg, tr);
+    }
+
+    public static void e(@NonNull String tag, @NonNull String msg) {
+        println(ERROR, tag, msg, null);
+    }
+
+    public static void e(@NonNull String tag, @NonNull String msg, @Nullable Throwable tr) {
+        println(ERROR, tag, msg, tr);
+    }
+}
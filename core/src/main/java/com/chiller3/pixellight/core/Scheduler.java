@@ -0,0 +1,28 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.core;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+
+/**
+ * The single thread that a {@link TorchStateMachine} is confined to. On Android, this is a
+ * {@code Handler} for the camera thread.
+ */
+public interface Scheduler {
+    /** Monotonic time in nanoseconds. */
+    @AnyThread
+    long nanoTime();
+
+    @AnyThread
+    boolean post(@NonNull Runnable runnable);
+
+    @AnyThread
+    boolean postDelayed(@NonNull Runnable runnable, long delayMs);
+
+    @AnyThread
+    void removeCallbacks(@NonNull Runnable runnable);
+}
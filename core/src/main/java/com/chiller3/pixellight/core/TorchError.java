@@ -0,0 +1,19 @@
+/*
+ * SPDX-FileCopyrightText: 2024 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.core;
+
+public enum TorchError {
+    NO_PERMISSION,
+    BLOCKED_BY_POLICY,
+    DISCONNECTED,
+    DEVICE_ERROR,
+    SERVICE_ERROR,
+    SESSION_ERROR,
+    IN_USE,
+    MAXIMUM_IN_USE,
+    NO_VALID_CAMERA,
+    UNKNOWN,
+}
@@ -0,0 +1,1663 @@
+/*
+ * SPDX-FileCopyrightText: 2024-2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.core;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * The torch state machine. The lifecycle begins when the torch is turned on and ends when it turns
+ * off. This has no Android dependencies. The camera is accessed through a {@link CameraBackend}.
+ *
+ * <p>Brightness levels that are reachable with the standard Android 13+ torch strength API are
+ * served with {@link CameraBackend#turnOnTorch(String, int)}, which does not require a camera
+ * session and has essentially no CPU cost. Only the levels above that range go through a capture
+ * session with the private Pixel keys.
+ *
+ * <p>If warm standby is enabled, the camera device and session are kept open after the torch turns
+ * off so that turning it back on only requires a single capture. The camera is released as soon as
+ * another client takes it over.
+ *
+ * <p>When the user is likely about to toggle the torch, like when the quick settings panel is
+ * opened, the camera can be speculatively pre-warmed in the same way. The camera is released again
+ * if the torch is not turned on within {@link #PREWARM_TIMEOUT_MS}.
+ *
+ * <p>At most one capture request is in flight at a time. Brightness changes that arrive while a
+ * capture is in flight only update the desired brightness, which is submitted once the in-flight
+ * capture completes. This keeps fast slider drags from queueing up captures in the camera HAL.
+ *
+ * <p>A brightness level set through a capture session is only reported to the {@link Callbacks}
+ * once the capture completes and the reported flash state agrees with it. Failed captures are
+ * retried with exponential backoff, starting at {@link #CAPTURE_RETRY_BASE_MS}. After
+ * {@link #MAX_CAPTURE_FAILURES} consecutive failures, the session is torn down with
+ * {@link TorchError#SESSION_ERROR}. If only the flash state keeps disagreeing, it is assumed to be
+ * unreliable and ignored for the rest of the session instead.
+ *
+ * <p>Everything except {@link #submitBrightness(int, long)} and the statistics getters must be called
+ * from the {@link Scheduler} thread. All {@link Callbacks} are invoked on that thread too.
+ *
+ * <p>Brightness commands are sequenced and folded before they reach the state machine. Commands
+ * that arrive before the scheduler thread gets to them collapse into a single absolute brightness
+ * or a single toggle, so a storm of toggles costs at most one state change per scheduler thread
+ * iteration and on/off pairs cancel out entirely. Every camera device open gets a new generation
+ * number. Callbacks from an older generation are dropped and a device that finishes opening after
+ * it was abandoned is either adopted or closed immediately, so at most one camera device is ever
+ * open or being opened.
+ *
+ * <p>New capture sessions use the {@link CaptureStrategy} from the {@link Settings}.
+ *
+ * <p>A {@link LightPattern} is played at the persisted brightness by handing the whole frame plan
+ * to the session at once, so the edges are paced by the sensor instead of by this thread. The
+ * timing error of every edge is measured against the sensor timestamps. Any brightness command
+ * stops the pattern.
+ *
+ * <p>A brightness command can fade to its level over a given duration. The ramp is driven by
+ * capture completions: the next level is only submitted once the previous capture completes, and
+ * it is whichever level the ramp should be at by then. This runs the ramp at the rate that the
+ * pipeline actually sustains without ever queueing captures. Levels in between are skipped when the
+ * pipeline is slower than the ramp. The torch strength API can't be paced by the camera, so levels
+ * that would be served by it are set immediately instead of fading.
+ *
+ * <p>Commands, camera lifecycle events, captures, and errors are recorded in a {@link TraceBuffer}
+ * that can be dumped at any time. Per-event debug logging is only compiled in when
+ * {@link Log#VERBOSE} is set.
+ */
+public class TorchStateMachine {
+    public enum State {
+        OFF,
+        // Torch is on via the standard torch strength API. No camera device is open.
+        TORCH,
+        ACTIVATING,
+        ON,
+        // Camera device and session are open, but the torch is off.
+        STANDBY,
+    }
+
+    private static final String TAG = TorchStateMachine.class.getSimpleName();
+
+    public static final int BRIGHTNESS_TOGGLE = -2;
+    public static final int BRIGHTNESS_PERSISTED = -1;
+    private static final int BRIGHTNESS_NONE = Integer.MIN_VALUE;
+
+    /** Fade with the duration from {@link Settings#getFadeDurationMs(boolean)}. */
+    public static final long FADE_DEFAULT = -1;
+    public static final long MAX_FADE_MS = 10_000;
+
+    private static final long PREWARM_TIMEOUT_MS = 5000;
+    private static final int PREBUILD_BATCH_SIZE = 16;
+    private static final int MAX_CAPTURE_FAILURES = 3;
+    private static final long CAPTURE_RETRY_BASE_MS = 20;
+
+    // Things following the object lifecycle.
+    private final Scheduler scheduler;
+    private final CameraBackend backend;
+    private final Settings settings;
+    private final Callbacks callbacks;
+    private final Runnable prewarmTimeout = this::onPrewarmTimeout;
+    private final Runnable commandDrain = this::drainCommands;
+    private final Runnable captureRetry = this::onCaptureRetry;
+    private final Runnable rampStep = this::onRampStep;
+    private final CameraBackend.PatternCallback patternCallback =
+            new CameraBackend.PatternCallback() {
+                @Override
+                public void onPatternFrame(@NonNull CameraBackend.Session session,
+                                           long frameNumber, long timestampNs) {
+                    TorchStateMachine.this.onPatternFrame(session, frameNumber, timestampNs);
+                }
+
+                @Override
+                public void onPatternFinished(@NonNull CameraBackend.Session session) {
+                    TorchStateMachine.this.onPatternFinished(session);
+                }
+            };
+    private final TraceBuffer trace;
+    private final CameraBackend.TorchCallback torchCallback = new CameraBackend.TorchCallback() {
+        @Override
+        public void onTorchModeChanged(@NonNull String cameraId, boolean enabled) {
+            TorchStateMachine.this.onTorchModeChanged(cameraId, enabled);
+        }
+
+        @Override
+        public void onTorchModeUnavailable(@NonNull String cameraId) {
+            TorchStateMachine.this.onTorchModeUnavailable(cameraId);
+        }
+    };
+
+    // Brightness commands that the scheduler thread hasn't picked up yet. These are guarded by
+    // commandLock. At most one of pendingBrightness and pendingToggle is set. The fade duration
+    // is always the one from the latest command.
+    private final Object commandLock = new Object();
+    private int pendingBrightness = BRIGHTNESS_NONE;
+    private boolean pendingToggle = false;
+    private long pendingFadeMs = 0;
+    private long commandSeq = 0;
+    private boolean drainScheduled = false;
+
+    // Things following the object lifecycle that are only accessed from the scheduler thread.
+    private boolean ownerNotified = false;
+    // Whether the torch is on according to the torch callback, regardless of who turned it on.
+    private boolean torchModeEnabled = false;
+    // Generation of the camera device that we currently want. This is bumped whenever the camera is
+    // opened or closed.
+    private int cameraGeneration = 0;
+    // Generation of the camera open request that is still in flight or -1 if there is none.
+    private int openingGeneration = -1;
+
+    // Statistics. These are written from the scheduler thread and can be read from any thread.
+    private volatile int prewarmHits = 0;
+    private volatile int prewarmMisses = 0;
+    private volatile long prewarmHeadStartMs = 0;
+    private volatile long droppedCaptures = 0;
+    private volatile long appliedCommandSeq = 0;
+    private volatile long foldedCommands = 0;
+    private volatile long staleCameraCallbacks = 0;
+    private volatile long cameraOpens = 0;
+    private volatile long submittedCaptures = 0;
+    private volatile long confirmedCaptures = 0;
+    private volatile long failedCaptures = 0;
+    private volatile long captureRetries = 0;
+    private volatile long flashStateMismatches = 0;
+    private volatile long totalCaptureLatencyNs = 0;
+    private volatile long maxCaptureLatencyNs = 0;
+    private volatile long patternsPlayed = 0;
+    private volatile long patternEdges = 0;
+    private volatile long failedPatternFrames = 0;
+    private volatile long totalPatternErrorNs = 0;
+    private volatile long maxPatternErrorNs = 0;
+    private volatile long rampsStarted = 0;
+    private volatile long rampsCompleted = 0;
+    private volatile long rampSteps = 0;
+
+    // Things following the torch lifecycle. These are only accessed from the scheduler thread.
+    private State state = State.OFF;
+    private String cameraId;
+    // Whether the camera details came from the cache and haven't been queried since.
+    private boolean cameraDetailsCached = false;
+    private int maxBrightness = -1;
+    // Highest level supported by the standard torch strength API or 0 if unsupported.
+    private int maxTorchStrength = 0;
+    // Whether torch mode events from before we last turned on the torch may still be in flight.
+    private boolean awaitingTorchOn = false;
+    // Last brightness level that was submitted or -1 if the camera is in an unknown state.
+    private int curBrightness = 0;
+    // Last brightness level that took effect. This is what the callbacks are told about.
+    private int confirmedBrightness = 0;
+    private int desiredBrightness = 0;
+    private CameraBackend.Device camera;
+    private CameraBackend.Session session;
+    // Whether a capture is in flight or a failed capture is waiting to be retried.
+    private boolean captureInFlight = false;
+    // Whether the desired brightness changed while a capture was in flight.
+    private boolean capturePending = false;
+    private int inFlightBrightness;
+    private long captureSubmitTime;
+    private int consecutiveCaptureFailures = 0;
+    private boolean flashStateTrusted = true;
+    private boolean prewarming = false;
+    private long prewarmStartTime;
+    private long prewarmReadyTime;
+    // Pattern that is playing or waiting for the session to be ready.
+    private LightPattern pattern;
+    private LightPattern.FramePlan patternPlan;
+    private boolean patternPlaying = false;
+    // Sensor timestamp of the first frame of the pattern or -1 if not known yet.
+    private long patternStartNs;
+    private long patternStartEdges;
+    // Brightness ramp that is in progress. The desired brightness is the current step.
+    private boolean ramping = false;
+    private int rampFrom;
+    private int rampTarget;
+    private long rampDurationNs;
+    // Time that the ramp began stepping or -1 if it is still waiting for the session.
+    private long rampStartNs;
+    private long rampStartSteps;
+
+    @AnyThread
+    public TorchStateMachine(@NonNull Scheduler scheduler, @NonNull CameraBackend backend,
+                             @NonNull Settings settings, @NonNull Callbacks callbacks) {
+        this.scheduler = scheduler;
+        this.backend = backend;
+        this.settings = settings;
+        this.callbacks = callbacks;
+        trace = new TraceBuffer(TraceBuffer.DEFAULT_CAPACITY, scheduler::nanoTime);
+
+        backend.registerTorchCallback(torchCallback);
+    }
+
+    @AnyThread
+    public void release() {
+        backend.unregisterTorchCallback(torchCallback);
+    }
+
+    @WorkerThread
+    private boolean needsOwner() {
+        return switch (state) {
+            case OFF, STANDBY -> false;
+            case TORCH, ON -> true;
+            // The camera can be opened in the background for standby and pre-warming.
+            case ACTIVATING -> desiredBrightness != 0;
+        };
+    }
+
+    /**
+     * Notify the service owner if whether it is needed has changed since the last notification.
+     *
+     * @return Whether the owner was notified
+     */
+    @WorkerThread
+    private boolean updateOwner() {
+        final var ownerNeeded = needsOwner();
+        if (ownerNeeded == ownerNotified) {
+            return false;
+        }
+
+        ownerNotified = ownerNeeded;
+        callbacks.onOwnerNeeded(ownerNeeded);
+
+        return true;
+    }
+
+    @WorkerThread
+    private boolean updateCameraDetails() {
+        if (cameraId != null) {
+            return true;
+        }
+
+        // Camera enumeration is slow, so trust the cached details from the last time if they're
+        // for the same OS build. They are still checked in the background.
+        final var cachedDetails = settings.getCameraDetails();
+        if (cachedDetails != null) {
+            Log.d(TAG, "Using cached camera details: " + cachedDetails);
+            applyCameraDetails(cachedDetails);
+            cameraDetailsCached = true;
+
+            // Let everything that's already queued run first.
+            scheduler.post(() -> verifyCameraDetails(cachedDetails));
+
+            return true;
+        }
+
+        try {
+            final var details = backend.queryCameraDetails();
+            if (details != null) {
+                Log.d(TAG, "Found camera: " + details);
+                applyCameraDetails(details);
+                cameraDetailsCached = false;
+                settings.setCameraDetails(details);
+
+                return true;
+            }
+
+            Log.e(TAG, "Failed to find suitable camera");
+            onError(TorchError.NO_VALID_CAMERA);
+        } catch (CameraException e) {
+            Log.e(TAG, "Failed to query for suitable cameras", e);
+            onError(e.getError());
+        }
+
+        return false;
+    }
+
+    @WorkerThread
+    private void applyCameraDetails(@NonNull CameraDetails details) {
+        cameraId = details.cameraId();
+        maxBrightness = details.maxBrightness();
+        maxTorchStrength = details.maxTorchStrength();
+        curBrightness = 0;
+        confirmedBrightness = 0;
+    }
+
+    /** Query the camera details and replace the cached details if needed. */
+    @WorkerThread
+    private void verifyCameraDetails(@NonNull CameraDetails cachedDetails) {
+        if (!cameraDetailsCached) {
+            // They were already queried again after the camera turned out to be invalid.
+            return;
+        }
+
+        final CameraDetails details;
+
+        try {
+            details = backend.queryCameraDetails();
+        } catch (CameraException e) {
+            // Not conclusive. Keep using the cached details.
+            Log.w(TAG, "Failed to verify cached camera details", e);
+            return;
+        }
+
+        if (!cachedDetails.equals(details)) {
+            onCachedCameraDetailsInvalid(details);
+        } else {
+            cameraDetailsCached = false;
+        }
+    }
+
+    /**
+     * Handle the backend reporting that the camera is not valid. If the camera details came from
+     * the cache, which is the case after an OS update changed the camera, they are queried again
+     * right away and the torch is restored. Otherwise, this is an error.
+     */
+    @WorkerThread
+    private void onCameraNotFound() {
+        if (!cameraDetailsCached) {
+            // Only forget the camera once it's closed, since a torch that is still lit from
+            // before an open is turned off through it.
+            onCameraFailure(TorchError.NO_VALID_CAMERA);
+
+            // The camera details will be queried again next time.
+            settings.setCameraDetails(null);
+            cameraId = null;
+            return;
+        }
+
+        final CameraDetails details;
+
+        try {
+            details = backend.queryCameraDetails();
+        } catch (CameraException e) {
+            Log.e(TAG, "Failed to query for suitable cameras", e);
+            settings.setCameraDetails(null);
+            onCameraFailure(e.getError());
+            cameraId = null;
+            return;
+        }
+
+        onCachedCameraDetailsInvalid(details);
+    }
+
+    @WorkerThread
+    private void onCachedCameraDetailsInvalid(@Nullable CameraDetails details) {
+        Log.w(TAG, "Cached camera details are out of date: " + details);
+
+        settings.setCameraDetails(details);
+        cameraDetailsCached = false;
+
+        // The commands that were queued before the check already ran against the wrong camera.
+        final var wasOn = state != State.OFF;
+        final var brightness = ramping ? rampTarget : desiredBrightness;
+        final var pattern = this.pattern;
+
+        if (wasOn) {
+            closeCamera();
+        }
+
+        if (details == null) {
+            cameraId = null;
+            onError(TorchError.NO_VALID_CAMERA);
+        } else {
+            applyCameraDetails(details);
+            notifyTorchState();
+
+            if (wasOn && pattern != null) {
+                startPattern(pattern);
+            } else if (wasOn && brightness != 0) {
+                // Resolved again against the new maximum brightness.
+                setTorchBrightness(brightness, 0);
+            }
+        }
+    }
+
+    /**
+     * Make sure the camera details are known and report the current state to the callbacks.
+     *
+     * @return Whether the camera details are known
+     */
+    @WorkerThread
+    public boolean refreshCameras() {
+        if (!updateCameraDetails()) {
+            return false;
+        }
+
+        notifyTorchState();
+
+        return true;
+    }
+
+    /**
+     * Queue a brightness command. This can be a brightness level, {@link #BRIGHTNESS_TOGGLE}, or
+     * {@link #BRIGHTNESS_PERSISTED}. Commands that are still queued when the next one arrives are
+     * folded together.
+     *
+     * @return The sequence number of the command or -1 if it was invalid. The command has been
+     *         applied once {@link CommandStats#commands()} reaches this number.
+     */
+    @AnyThread
+    public long submitBrightness(int brightness) {
+        return submitBrightness(brightness, 0);
+    }
+
+    /**
+     * Queue a brightness command that fades to the new level over {@code fadeMs}. This can be 0 to
+     * change the brightness immediately or {@link #FADE_DEFAULT}.
+     *
+     * @see #submitBrightness(int)
+     */
+    @AnyThread
+    public long submitBrightness(int brightness, long fadeMs) {
+        if (brightness < 0 && brightness != BRIGHTNESS_PERSISTED
+                && brightness != BRIGHTNESS_TOGGLE) {
+            Log.w(TAG, "Ignoring invalid brightness value: " + brightness);
+            return -1;
+        } else if (fadeMs < 0 && fadeMs != FADE_DEFAULT) {
+            Log.w(TAG, "Ignoring invalid fade duration: " + fadeMs);
+            return -1;
+        }
+
+        trace.record(TraceBuffer.Event.COMMAND, brightness);
+
+        synchronized (commandLock) {
+            ++commandSeq;
+
+            if (brightness != BRIGHTNESS_TOGGLE) {
+                // Absolute values replace everything before them.
+                pendingBrightness = brightness;
+                pendingToggle = false;
+            } else if (pendingBrightness == BRIGHTNESS_NONE) {
+                // Nothing to resolve the toggle against until the scheduler thread runs. An even
+                // number of toggles is a no-op.
+                pendingToggle = !pendingToggle;
+            } else {
+                // The persisted brightness is never 0.
+                pendingBrightness = pendingBrightness == 0 ? BRIGHTNESS_PERSISTED : 0;
+            }
+
+            pendingFadeMs = fadeMs;
+
+            if (!drainScheduled) {
+                drainScheduled = scheduler.post(commandDrain);
+            }
+
+            return commandSeq;
+        }
+    }
+
+    @WorkerThread
+    private void drainCommands() {
+        final int brightness;
+        final boolean toggle;
+        final long fadeMs;
+        final long seq;
+
+        synchronized (commandLock) {
+            brightness = pendingBrightness;
+            toggle = pendingToggle;
+            fadeMs = pendingFadeMs;
+            seq = commandSeq;
+
+            pendingBrightness = BRIGHTNESS_NONE;
+            pendingToggle = false;
+            pendingFadeMs = 0;
+            drainScheduled = false;
+        }
+
+        final var received = seq - appliedCommandSeq;
+        final var applied = brightness != BRIGHTNESS_NONE || toggle ? 1 : 0;
+        appliedCommandSeq = seq;
+
+        if (received > applied) {
+            foldedCommands += received - applied;
+            if (Log.VERBOSE) {
+                Log.d(TAG, "Folded " + (received - applied) + " of " + received
+                        + " commands up to #" + seq);
+            }
+        }
+
+        if (brightness != BRIGHTNESS_NONE) {
+            setTorchBrightness(brightness, fadeMs);
+        } else if (toggle) {
+            setTorchBrightness(BRIGHTNESS_TOGGLE, fadeMs);
+        }
+    }
+
+    @AnyThread
+    @NonNull
+    public CommandStats getCommandStats() {
+        return new CommandStats(appliedCommandSeq, foldedCommands, staleCameraCallbacks);
+    }
+
+    /** Resolve a brightness command against the current state. */
+    @WorkerThread
+    private int resolveBrightness(int brightness) {
+        final int resolved;
+
+        if (brightness >= 0) {
+            resolved = brightness;
+        } else if (brightness == BRIGHTNESS_PERSISTED) {
+            resolved = settings.getBrightness(maxBrightness);
+        } else {
+            resolved = switch (state) {
+                case OFF, STANDBY -> settings.getBrightness(maxBrightness);
+                // The camera may only be opening in the background for standby or pre-warming.
+                case ACTIVATING -> desiredBrightness == 0
+                        ? settings.getBrightness(maxBrightness) : 0;
+                case TORCH, ON -> 0;
+            };
+        }
+
+        return Math.min(resolved, maxBrightness);
+    }
+
+    @WorkerThread
+    private void setTorchBrightness(int brightness, long fadeMs) {
+        if (Log.VERBOSE) {
+            Log.d(TAG, "User requesting brightness of " + brightness + " over " + fadeMs + "ms");
+        }
+
+        stopPattern();
+        stopRamp();
+        desiredBrightness = resolveBrightness(brightness);
+
+        if (fadeMs == FADE_DEFAULT) {
+            fadeMs = settings.getFadeDurationMs(desiredBrightness != 0);
+        }
+
+        if (fadeMs > 0 && startRamp(Math.min(fadeMs, MAX_FADE_MS))) {
+            // The ramp takes care of the rest.
+        } else if (desiredBrightness == 0) {
+            if (settings.isWarmStandbyEnabled()) {
+                enterStandby();
+            } else {
+                closeCamera();
+            }
+        } else {
+            final var needCamera = desiredBrightness > maxTorchStrength;
+
+            switch (state) {
+                case OFF -> {
+                    if (needCamera) {
+                        openCamera();
+                    } else {
+                        enableTorchMode();
+                    }
+                }
+                case TORCH -> {
+                    if (needCamera) {
+                        // The torch stays lit at the old level while the camera is being opened,
+                        // but the camera service turns it off as soon as the device is open. There
+                        // is no way to hand the torch over to the session, so it stays dark until
+                        // the first capture completes.
+                        openCamera();
+                    } else {
+                        enableTorchMode();
+                    }
+                }
+                // Session is not ready yet. It'll pick up the new value when it is ready.
+                case ACTIVATING -> {}
+                // Session is already active. Change the brightness with a new capture request.
+                // This is done even for levels in the torch strength range because switching back
+                // to the torch strength API would require closing the camera and turning the torch
+                // off.
+                case ON -> performCapture();
+                case STANDBY -> {
+                    if (needCamera) {
+                        performCapture();
+                    } else {
+                        // The torch strength API is still far cheaper than a session for the
+                        // brightness levels it can reach.
+                        closeCamera();
+                        enableTorchMode();
+                    }
+                }
+            }
+        }
+
+        if (prewarming && desiredBrightness != 0) {
+            finishPrewarm(state == State.ACTIVATING || state == State.ON);
+        }
+
+        // Needed when only the desired brightness changed while the camera is being opened.
+        updateOwner();
+    }
+
+    /**
+     * Play {@code pattern} at the persisted brightness until it finishes or the next brightness
+     * command. This always goes through a capture session because the torch strength API can't
+     * be paced by the camera.
+     */
+    @WorkerThread
+    public void startPattern(@NonNull LightPattern pattern) {
+        if (!updateCameraDetails()) {
+            return;
+        }
+
+        Log.d(TAG, "Starting pattern: " + pattern);
+
+        stopPattern();
+        stopRamp();
+        this.pattern = pattern;
+        desiredBrightness = resolveBrightness(BRIGHTNESS_PERSISTED);
+
+        switch (state) {
+            // The camera service turns off the torch once the camera device is opened.
+            case OFF, TORCH -> openCamera();
+            // The pattern starts when the session is ready.
+            case ACTIVATING -> {}
+            case ON, STANDBY -> performCapture();
+        }
+
+        if (prewarming) {
+            finishPrewarm(state == State.ACTIVATING || state == State.ON);
+        }
+
+        updateOwner();
+    }
+
+    /** Forget the current pattern. If it was playing, the next capture replaces it. */
+    @WorkerThread
+    private void stopPattern() {
+        if (pattern == null) {
+            return;
+        }
+
+        if (patternPlaying) {
+            Log.d(TAG, "Stopping pattern: " + pattern);
+            trace.record(TraceBuffer.Event.PATTERN_STOPPED, patternEdges - patternStartEdges);
+
+            // Whichever frame was playing last, the torch is in an unknown state.
+            curBrightness = -1;
+        }
+
+        pattern = null;
+        patternPlan = null;
+        patternPlaying = false;
+    }
+
+    /**
+     * Start fading from the current brightness to the desired brightness. The desired brightness
+     * becomes the first step of the ramp.
+     *
+     * @return Whether a ramp was started. If not, the desired brightness should be set directly.
+     */
+    @WorkerThread
+    private boolean startRamp(long fadeMs) {
+        final var target = desiredBrightness;
+        final var from = switch (state) {
+            // The torch strength API can't be paced, so only fade if a session is needed anyway.
+            case OFF -> target > maxTorchStrength ? 0 : -1;
+            case TORCH -> -1;
+            case ACTIVATING, STANDBY -> 0;
+            case ON -> curBrightness >= 0 ? curBrightness : confirmedBrightness;
+        };
+
+        if (from < 0 || from == target) {
+            return false;
+        }
+
+        Log.d(TAG, "Fading from " + from + " to " + target + " over " + fadeMs + "ms");
+        trace.record(TraceBuffer.Event.RAMP_STARTED, target);
+
+        ramping = true;
+        rampFrom = from;
+        rampTarget = target;
+        rampDurationNs = fadeMs * 1_000_000;
+        rampStartNs = -1;
+        rampStartSteps = rampSteps;
+        ++rampsStarted;
+
+        desiredBrightness = rampLevel(0);
+
+        switch (state) {
+            case OFF -> openCamera();
+            // The first step is submitted when the session is ready.
+            case ACTIVATING -> {}
+            case ON, STANDBY -> onRampStep();
+        }
+
+        return true;
+    }
+
+    @WorkerThread
+    private void stopRamp() {
+        if (ramping) {
+            ramping = false;
+            scheduler.removeCallbacks(rampStep);
+        }
+    }
+
+    /** Get the level of the ramp after {@code elapsedNs}. The torch stays lit until the end. */
+    @WorkerThread
+    private int rampLevel(long elapsedNs) {
+        return Math.max(rampFrom + (int) ((rampTarget - rampFrom) * elapsedNs / rampDurationNs),
+                1);
+    }
+
+    /** Get the time from {@code elapsedNs} until the ramp moves past its current level. */
+    @WorkerThread
+    private long rampLevelRemainingNs(long elapsedNs) {
+        final long steps = Math.abs(rampTarget - rampFrom);
+        final long next = Math.abs(rampLevel(elapsedNs) - rampFrom) + 1;
+
+        return (next * rampDurationNs + steps - 1) / steps - elapsedNs;
+    }
+
+    /**
+     * Submit the level that the ramp should be at now. This runs whenever a capture completes
+     * during a ramp. If the ramp hasn't moved on from the current level yet, it runs again once
+     * it has.
+     */
+    @WorkerThread
+    private void onRampStep() {
+        // The next step is taken once the session is ready or the capture in flight completes.
+        if (!ramping || session == null || captureInFlight) {
+            return;
+        }
+
+        scheduler.removeCallbacks(rampStep);
+
+        final var now = scheduler.nanoTime();
+        if (rampStartNs < 0) {
+            rampStartNs = now;
+        }
+
+        final var elapsedNs = now - rampStartNs;
+        if (elapsedNs >= rampDurationNs) {
+            final var target = rampTarget;
+            final var steps = rampSteps - rampStartSteps;
+
+            Log.d(TAG, "Fade to " + target + " finished after " + steps + " steps");
+            trace.record(TraceBuffer.Event.RAMP_FINISHED, steps);
+            ++rampsCompleted;
+
+            stopRamp();
+            setTorchBrightness(target, 0);
+            return;
+        }
+
+        final var level = rampLevel(elapsedNs);
+        if (level == curBrightness) {
+            final var delayMs = (rampLevelRemainingNs(elapsedNs) + 999_999) / 1_000_000;
+            scheduler.postDelayed(rampStep, delayMs);
+            return;
+        }
+
+        desiredBrightness = level;
+        ++rampSteps;
+        performCapture();
+    }
+
+    /**
+     * Speculatively prepare for the torch being turned on soon. The camera details are always
+     * resolved. If {@code canOpenCamera} is true, which requires the app or service to be in the
+     * foreground, then the camera session is opened too when the persisted brightness needs it.
+     */
+    @WorkerThread
+    public void prewarm(boolean canOpenCamera) {
+        if (!updateCameraDetails() || !canOpenCamera || state != State.OFF) {
+            return;
+        } else if (settings.getBrightness(maxBrightness) <= maxTorchStrength) {
+            // The torch strength API is fast enough on its own.
+            return;
+        } else if (torchModeEnabled) {
+            // Opening the camera would turn off someone else's torch.
+            Log.d(TAG, "Not pre-warming camera because torch is on");
+            return;
+        }
+
+        Log.d(TAG, "Pre-warming camera");
+
+        prewarming = true;
+        prewarmStartTime = scheduler.nanoTime();
+        prewarmReadyTime = -1;
+        scheduler.postDelayed(prewarmTimeout, PREWARM_TIMEOUT_MS);
+
+        openCamera();
+    }
+
+    @WorkerThread
+    private void onPrewarmTimeout() {
+        if (!prewarming) {
+            return;
+        }
+
+        Log.d(TAG, "Pre-warmed camera was not used");
+
+        finishPrewarm(false);
+
+        if (!settings.isWarmStandbyEnabled()) {
+            releaseStandby();
+        }
+    }
+
+    @WorkerThread
+    private void finishPrewarm(boolean hit) {
+        prewarming = false;
+        scheduler.removeCallbacks(prewarmTimeout);
+
+        if (hit) {
+            final var now = scheduler.nanoTime();
+            final var readyTime = prewarmReadyTime >= 0 ? prewarmReadyTime : now;
+
+            ++prewarmHits;
+            prewarmHeadStartMs += (Math.min(now, readyTime) - prewarmStartTime) / 1_000_000;
+        } else {
+            ++prewarmMisses;
+        }
+
+        if (Log.VERBOSE) {
+            Log.d(TAG, "Pre-warm statistics: " + getPrewarmStats());
+        }
+    }
+
+    @AnyThread
+    @NonNull
+    public PrewarmStats getPrewarmStats() {
+        return new PrewarmStats(prewarmHits, prewarmMisses, prewarmHeadStartMs);
+    }
+
+    /**
+     * Whether the torch is off and no camera device is open or being opened, so something else,
+     * like a {@link CaptureCalibrator}, can use the camera.
+     */
+    @WorkerThread
+    public boolean isIdle() {
+        return state == State.OFF && openingGeneration < 0;
+    }
+
+    @WorkerThread
+    @NonNull
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Whether the torch is on at a steady level, so that changing the brightness won't interrupt
+     * a pattern, a fade, or the camera being opened.
+     */
+    @WorkerThread
+    public boolean isSteadyOn() {
+        return (state == State.ON || state == State.TORCH) && desiredBrightness > 0
+                && pattern == null && !ramping;
+    }
+
+    /** Release the camera if it is only being held open for warm standby. */
+    @WorkerThread
+    public void releaseStandby() {
+        if (desiredBrightness == 0 && (state == State.ACTIVATING || state == State.STANDBY)) {
+            Log.d(TAG, "Releasing standby camera");
+            closeCamera();
+        }
+    }
+
+    @WorkerThread
+    private void enterStandby() {
+        switch (state) {
+            // The camera is only kept open after the torch has been used.
+            case OFF, STANDBY -> {}
+            case TORCH -> {
+                disableTorchMode();
+                curBrightness = 0;
+                confirmedBrightness = 0;
+                notifyTorchState();
+
+                // Reopen the camera in the background. It'll go into standby once the session is
+                // configured.
+                openCamera();
+            }
+            // Session is not ready yet. It'll go into standby when it is ready.
+            case ACTIVATING -> {}
+            // Turn the torch off with a new capture request, but keep the session.
+            case ON -> performCapture();
+        }
+    }
+
+    @WorkerThread
+    private void onError(@NonNull TorchError error) {
+        Log.w(TAG, "Camera lifecycle exiting due to error: " + error);
+        trace.record(TraceBuffer.Event.ERROR, error.ordinal());
+
+        callbacks.onTorchError(error);
+
+        if (state != State.OFF) {
+            closeCamera();
+        }
+    }
+
+    @WorkerThread
+    private void onCameraFailure(@NonNull TorchError error) {
+        if (desiredBrightness == 0) {
+            // Only the standby camera was affected, which the user doesn't need to know about.
+            Log.d(TAG, "Standby camera lifecycle exiting due to error: " + error);
+            trace.record(TraceBuffer.Event.ERROR, error.ordinal());
+            closeCamera();
+        } else {
+            onError(error);
+        }
+    }
+
+    @WorkerThread
+    private void enableTorchMode() {
+        assert state == State.OFF || state == State.TORCH;
+        if (state == State.OFF) {
+            awaitingTorchOn = true;
+        }
+
+        state = State.TORCH;
+
+        updateOwner();
+
+        if (curBrightness == desiredBrightness) {
+            return;
+        }
+
+        if (Log.VERBOSE) {
+            Log.d(TAG, "Setting torch strength to " + desiredBrightness);
+        }
+
+        try {
+            backend.turnOnTorch(cameraId, desiredBrightness);
+        } catch (CameraException e) {
+            Log.e(TAG, "Failed to set torch strength: " + cameraId, e);
+
+            if (e.getError() == TorchError.NO_VALID_CAMERA) {
+                onCameraNotFound();
+            } else {
+                onError(e.getError());
+            }
+            return;
+        }
+
+        curBrightness = desiredBrightness;
+        confirmedBrightness = curBrightness;
+        trace.record(TraceBuffer.Event.TORCH_STRENGTH_SET, curBrightness);
+
+        notifyTorchState();
+    }
+
+    @WorkerThread
+    private void disableTorchMode() {
+        awaitingTorchOn = false;
+
+        try {
+            backend.turnOffTorch(cameraId);
+        } catch (CameraException e) {
+            // The torch is already off if the camera is in use by someone else.
+            Log.w(TAG, "Failed to turn off torch: " + cameraId, e);
+        }
+    }
+
+    @WorkerThread
+    private void openCamera() {
+        assert state == State.OFF || state == State.TORCH;
+        state = State.ACTIVATING;
+
+        if (updateOwner() && ownerNotified) {
+            // Let the service move to the foreground before opening the camera.
+            callbacks.runAfterOwnerUpdate(this::openCameraDevice);
+        } else {
+            openCameraDevice();
+        }
+    }
+
+    @WorkerThread
+    private void openCameraDevice() {
+        if (state != State.ACTIVATING || camera != null) {
+            return;
+        } else if (openingGeneration >= 0) {
+            if (openingGeneration != cameraGeneration) {
+                // An abandoned open is still in flight. Take it over instead of opening the camera
+                // a second time.
+                Log.d(TAG, "Adopting in-flight camera open #" + openingGeneration);
+                cameraGeneration = openingGeneration;
+            }
+            return;
+        }
+
+        final var generation = ++cameraGeneration;
+        openingGeneration = generation;
+        ++cameraOpens;
+        trace.record(TraceBuffer.Event.CAMERA_OPEN, generation);
+
+        try {
+            backend.openCamera(cameraId, createCameraCallback(generation));
+        } catch (CameraException e) {
+            openingGeneration = -1;
+            Log.e(TAG, "Failed to open camera: " + cameraId, e);
+
+            if (e.getError() == TorchError.NO_VALID_CAMERA) {
+                onCameraNotFound();
+            } else {
+                onCameraFailure(e.getError());
+            }
+        }
+    }
+
+    @WorkerThread
+    private void closeCamera() {
+        // This also covers the torch that is still lit from the torch strength API while the
+        // camera is being opened to take over from it.
+        if (state != State.OFF && (torchModeEnabled || awaitingTorchOn)) {
+            disableTorchMode();
+        }
+
+        if (prewarming) {
+            finishPrewarm(false);
+        }
+
+        if (session != null && droppedCaptures > 0) {
+            Log.d(TAG, "Dropped " + droppedCaptures + " intermediate brightness updates so far");
+        }
+
+        // Callbacks for the old camera device and session are stale from now on. An open that is
+        // still in flight is closed as soon as it completes unless it is adopted again first.
+        trace.record(TraceBuffer.Event.CAMERA_CLOSED, cameraGeneration);
+        ++cameraGeneration;
+
+        // We don't need to close the session. Closing the camera device is sufficient.
+        session = null;
+        captureInFlight = false;
+        capturePending = false;
+        consecutiveCaptureFailures = 0;
+        flashStateTrusted = true;
+        scheduler.removeCallbacks(captureRetry);
+        stopPattern();
+        stopRamp();
+
+        if (camera != null) {
+            camera.close();
+            camera = null;
+        }
+
+        state = State.OFF;
+        curBrightness = 0;
+        confirmedBrightness = 0;
+
+        notifyTorchState();
+
+        updateOwner();
+    }
+
+    @NonNull
+    private CameraBackend.DeviceCallback createCameraCallback(int generation) {
+        return new CameraBackend.DeviceCallback() {
+            @Override
+            public void onOpened(@NonNull CameraBackend.Device device) {
+                onCameraOpened(generation, device);
+            }
+
+            @Override
+            public void onDisconnected(@NonNull CameraBackend.Device device) {
+                if (isCurrentCamera(generation, device)) {
+                    onCameraClosed(device);
+                }
+            }
+
+            @Override
+            public void onError(@NonNull CameraBackend.Device device, @NonNull TorchError error) {
+                if (isCurrentCamera(generation, device)) {
+                    onCameraError(device, error);
+                }
+            }
+        };
+    }
+
+    @NonNull
+    private CameraBackend.SessionCallback createSessionCallback(int generation) {
+        return new CameraBackend.SessionCallback() {
+            @Override
+            public void onConfigured(@NonNull CameraBackend.Session session) {
+                if (isCurrentGeneration(generation)) {
+                    onSessionConfigured(session);
+                }
+            }
+
+            @Override
+            public void onConfigureFailed(@NonNull CameraBackend.Session session) {
+                if (isCurrentGeneration(generation)) {
+                    onSessionConfigureFailed(session);
+                }
+            }
+
+            @Override
+            public void onCaptureCompleted(@NonNull CameraBackend.Session session,
+                                           @NonNull CameraBackend.FlashState flashState) {
+                TorchStateMachine.this.onCaptureCompleted(session, flashState);
+            }
+
+            @Override
+            public void onCaptureFailed(@NonNull CameraBackend.Session session) {
+                TorchStateMachine.this.onCaptureFailed(session);
+            }
+        };
+    }
+
+    @WorkerThread
+    private boolean isCurrentGeneration(int generation) {
+        if (generation != cameraGeneration) {
+            if (Log.VERBOSE) {
+                Log.d(TAG, "Dropping stale callback for camera #" + generation);
+            }
+            ++staleCameraCallbacks;
+            return false;
+        }
+
+        return true;
+    }
+
+    /** Check if a camera device callback is current and close the device if it's not. */
+    @WorkerThread
+    private boolean isCurrentCamera(int generation, @NonNull CameraBackend.Device device) {
+        if (generation == openingGeneration) {
+            openingGeneration = -1;
+        }
+
+        if (!isCurrentGeneration(generation)) {
+            device.close();
+            return false;
+        }
+
+        return true;
+    }
+
+    @WorkerThread
+    private void onCameraOpened(int generation, @NonNull CameraBackend.Device device) {
+        if (generation != cameraGeneration && state == State.ACTIVATING && camera == null
+                && generation == openingGeneration && device.getId().equals(cameraId)) {
+            // The torch was turned back on while the abandoned open was in flight, but before the
+            // deferred open ran.
+            Log.d(TAG, "Adopting camera #" + generation + " that just opened");
+            cameraGeneration = generation;
+        }
+
+        if (!isCurrentCamera(generation, device)) {
+            return;
+        }
+
+        Log.d(TAG, "Camera " + device.getId() + " #" + generation + " opened");
+        trace.record(TraceBuffer.Event.CAMERA_OPENED, generation);
+
+        camera = device;
+
+        try {
+            device.createSession(maxBrightness, settings.getCaptureStrategy(),
+                    createSessionCallback(generation));
+        } catch (CameraException e) {
+            Log.e(TAG, "Failed to create capture session", e);
+            onCameraFailure(e.getError());
+        }
+    }
+
+    @WorkerThread
+    private void onTorchModeChanged(@NonNull String cameraId, boolean enabled) {
+        if (!cameraId.equals(this.cameraId)) {
+            return;
+        }
+
+        torchModeEnabled = enabled;
+
+        if (enabled) {
+            awaitingTorchOn = false;
+        }
+
+        if (state != State.TORCH) {
+            return;
+        }
+
+        if (!enabled && !awaitingTorchOn) {
+            // Someone else, like the system flashlight tile, turned off the torch.
+            Log.d(TAG, "Torch was turned off externally");
+            closeCamera();
+        }
+    }
+
+    @WorkerThread
+    private void onTorchModeUnavailable(@NonNull String cameraId) {
+        if (cameraId.equals(this.cameraId)) {
+            torchModeEnabled = false;
+        }
+
+        // This also happens when we open the camera ourselves, but the state is no longer TORCH
+        // by then.
+        if (cameraId.equals(this.cameraId) && state == State.TORCH) {
+            Log.d(TAG, "Torch mode became unavailable because camera is in use");
+            closeCamera();
+        }
+    }
+
+    @WorkerThread
+    private void onCameraClosed(@NonNull CameraBackend.Device device) {
+        Log.e(TAG, "Camera " + device.getId() + " disconnected");
+
+        // This is also how another client with a higher priority takes over the standby camera.
+        onCameraFailure(TorchError.DISCONNECTED);
+    }
+
+    @WorkerThread
+    private void onCameraError(@NonNull CameraBackend.Device device, @NonNull TorchError error) {
+        Log.e(TAG, "Camera " + device.getId() + " failed with error: " + error);
+
+        onCameraFailure(error);
+    }
+
+    @WorkerThread
+    private void onSessionConfigured(@NonNull CameraBackend.Session session) {
+        Log.d(TAG, "Camera session configured: " + session);
+
+        this.session = session;
+        trace.record(TraceBuffer.Event.SESSION_CONFIGURED, cameraGeneration);
+
+        scheduler.post(() -> prebuildCaptureRequests(session, 0));
+
+        if (prewarming) {
+            prewarmReadyTime = scheduler.nanoTime();
+        }
+
+        performCapture();
+    }
+
+    @WorkerThread
+    private void onSessionConfigureFailed(@NonNull CameraBackend.Session session) {
+        Log.e(TAG, "Failed to configure session: " + session);
+
+        onCameraFailure(TorchError.SESSION_ERROR);
+    }
+
+    @WorkerThread
+    private void performCapture() {
+        try {
+            assert state == State.ACTIVATING || state == State.ON || state == State.STANDBY;
+            state = desiredBrightness == 0 ? State.STANDBY : State.ON;
+
+            if (pattern != null && (patternPlaying || captureInFlight || playPattern())) {
+                // The pattern starts once the capture in flight finishes.
+                updateOwner();
+                return;
+            }
+
+            if (captureInFlight) {
+                if (curBrightness != desiredBrightness) {
+                    // A previous pending value that was never submitted is overwritten.
+                    if (capturePending) {
+                        ++droppedCaptures;
+                    }
+                    capturePending = true;
+                }
+            } else if (curBrightness != desiredBrightness) {
+                if (Log.VERBOSE) {
+                    Log.d(TAG, "Performing capture because current brightness (" + curBrightness
+                            + ") != desired brightness (" + desiredBrightness + ")");
+                }
+                curBrightness = desiredBrightness;
+                inFlightBrightness = curBrightness;
+                captureSubmitTime = scheduler.nanoTime();
+                ++submittedCaptures;
+                trace.record(TraceBuffer.Event.CAPTURE_SUBMITTED, curBrightness);
+
+                session.capture(curBrightness);
+                captureInFlight = true;
+                capturePending = false;
+
+                // The callbacks are notified once the capture is confirmed.
+            }
+
+            updateOwner();
+        } catch (CameraException e) {
+            Log.e(TAG, "Failed to perform capture", e);
+            onCameraFailure(e.getError());
+        }
+    }
+
+    /**
+     * Hand the frame plan of the pattern to the session.
+     *
+     * @return Whether the pattern is playing. If the pattern can't be played at the session's
+     *         frame rate, it is dropped and the brightness is held steady instead.
+     */
+    @WorkerThread
+    private boolean playPattern() throws CameraException {
+        final LightPattern.FramePlan plan;
+        try {
+            plan = pattern.plan(session.getMinFrameDurationNs());
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Cannot play pattern: " + pattern, e);
+            pattern = null;
+            return false;
+        }
+
+        final var lit = plan.lit();
+        final var levels = new int[lit.length];
+        for (int i = 0; i < lit.length; ++i) {
+            levels[i] = lit[i] ? desiredBrightness : 0;
+        }
+
+        if (Log.VERBOSE) {
+            Log.d(TAG, "Playing pattern as " + levels.length + " frames of "
+                    + plan.frameDurationNs() / 1_000_000.0 + "ms");
+        }
+
+        session.playPattern(levels, plan.frameDurationNs(), pattern.isRepeating(),
+                patternCallback);
+
+        patternPlan = plan;
+        patternPlaying = true;
+        patternStartNs = -1;
+        patternStartEdges = patternEdges;
+        ++patternsPlayed;
+        trace.record(TraceBuffer.Event.PATTERN_STARTED, levels.length);
+
+        // Whichever frame is playing, the next capture has to be submitted.
+        curBrightness = -1;
+
+        if (confirmedBrightness != desiredBrightness) {
+            confirmedBrightness = desiredBrightness;
+            notifyTorchState();
+        }
+
+        return true;
+    }
+
+    @WorkerThread
+    private void onPatternFrame(@NonNull CameraBackend.Session session, long frameNumber,
+                                long timestampNs) {
+        if (session != this.session || !patternPlaying) {
+            return;
+        } else if (timestampNs < 0) {
+            ++failedPatternFrames;
+            return;
+        } else if (frameNumber == 0) {
+            // Everything is measured relative to the first frame.
+            patternStartNs = timestampNs;
+            return;
+        }
+
+        final var frames = patternPlan.lit().length;
+        final var offsetNs = patternPlan.edgeOffsetsNs()[(int) (frameNumber % frames)];
+        if (offsetNs == LightPattern.NO_EDGE || patternStartNs < 0) {
+            return;
+        }
+
+        final var expectedNs = patternStartNs + frameNumber / frames * pattern.getDurationNs()
+                + offsetNs;
+        final var errorNs = Math.abs(timestampNs - expectedNs);
+
+        ++patternEdges;
+        totalPatternErrorNs += errorNs;
+        maxPatternErrorNs = Math.max(maxPatternErrorNs, errorNs);
+
+        if (Log.VERBOSE) {
+            Log.d(TAG, "Pattern edge at frame " + frameNumber + " was off by "
+                    + errorNs / 1000 + "us");
+        }
+    }
+
+    @WorkerThread
+    private void onPatternFinished(@NonNull CameraBackend.Session session) {
+        if (session != this.session || !patternPlaying) {
+            return;
+        }
+
+        Log.d(TAG, "Pattern finished: " + pattern);
+
+        stopPattern();
+        setTorchBrightness(0, 0);
+    }
+
+    /**
+     * Prepare the capture requests for every brightness level, starting from {@code start}. This
+     * is split into batches so that other work on the scheduler thread isn't delayed by much.
+     */
+    @WorkerThread
+    private void prebuildCaptureRequests(@NonNull CameraBackend.Session session, int start) {
+        if (session != this.session) {
+            return;
+        }
+
+        final var end = Math.min(start + PREBUILD_BATCH_SIZE, maxBrightness + 1);
+
+        for (int brightness = start; brightness < end; ++brightness) {
+            session.prepare(brightness);
+        }
+
+        if (end <= maxBrightness) {
+            scheduler.post(() -> prebuildCaptureRequests(session, end));
+        }
+    }
+
+    @WorkerThread
+    private void onCaptureCompleted(@NonNull CameraBackend.Session session,
+                                    @NonNull CameraBackend.FlashState flashState) {
+        if (session != this.session) {
+            return;
+        }
+
+        final var latency = scheduler.nanoTime() - captureSubmitTime;
+        totalCaptureLatencyNs += latency;
+        maxCaptureLatencyNs = Math.max(maxCaptureLatencyNs, latency);
+
+        if (flashStateTrusted && flashState != CameraBackend.FlashState.UNKNOWN
+                && (flashState == CameraBackend.FlashState.ON) != (inFlightBrightness > 0)) {
+            ++flashStateMismatches;
+            trace.record(TraceBuffer.Event.CAPTURE_FAILED, inFlightBrightness);
+
+            if (consecutiveCaptureFailures < MAX_CAPTURE_FAILURES) {
+                retryCapture("Flash state " + flashState + " does not match brightness "
+                        + inFlightBrightness);
+                return;
+            }
+
+            Log.w(TAG, "Flash state is unreliable; ignoring it for the rest of the session");
+            flashStateTrusted = false;
+        }
+
+        ++confirmedCaptures;
+        consecutiveCaptureFailures = 0;
+
+        trace.record(TraceBuffer.Event.CAPTURE_COMPLETED, inFlightBrightness);
+        if (Log.VERBOSE) {
+            Log.d(TAG, "Brightness " + inFlightBrightness + " confirmed after "
+                    + latency / 1_000_000.0 + "ms");
+        }
+
+        if (confirmedBrightness != inFlightBrightness) {
+            confirmedBrightness = inFlightBrightness;
+            notifyTorchState();
+        }
+
+        onCaptureFinished(session);
+    }
+
+    @WorkerThread
+    private void onCaptureFailed(@NonNull CameraBackend.Session session) {
+        if (session != this.session) {
+            return;
+        }
+
+        ++failedCaptures;
+        trace.record(TraceBuffer.Event.CAPTURE_FAILED, inFlightBrightness);
+
+        retryCapture("Capture for brightness " + inFlightBrightness + " failed");
+    }
+
+    /** Resubmit the desired brightness after a backoff delay. */
+    @WorkerThread
+    private void retryCapture(@NonNull String reason) {
+        if (++consecutiveCaptureFailures > MAX_CAPTURE_FAILURES) {
+            Log.e(TAG, reason + "; giving up after " + MAX_CAPTURE_FAILURES + " retries");
+            onCameraFailure(TorchError.SESSION_ERROR);
+            return;
+        }
+
+        final var delayMs = CAPTURE_RETRY_BASE_MS << (consecutiveCaptureFailures - 1);
+        Log.w(TAG, reason + "; retrying in " + delayMs + "ms");
+        ++captureRetries;
+
+        // The torch may still be at the previous level, so the capture needs to be resubmitted.
+        // The capture stays in flight until then so that nothing else is submitted.
+        curBrightness = -1;
+        scheduler.postDelayed(captureRetry, delayMs);
+    }
+
+    @WorkerThread
+    private void onCaptureRetry() {
+        if (session != null) {
+            onCaptureFinished(session);
+        }
+    }
+
+    @WorkerThread
+    private void onCaptureFinished(@NonNull CameraBackend.Session session) {
+        // Ignore late callbacks from a session that has already been closed.
+        if (session != this.session) {
+            return;
+        }
+
+        captureInFlight = false;
+
+        if (ramping) {
+            onRampStep();
+        } else if (curBrightness != desiredBrightness || (pattern != null && !patternPlaying)) {
+            // Submit the latest desired brightness.
+            performCapture();
+        }
+
+        capturePending = false;
+    }
+
+    /** Get the number of intermediate brightness changes that were never submitted. */
+    @AnyThread
+    public long getDroppedCaptures() {
+        return droppedCaptures;
+    }
+
+    @AnyThread
+    @NonNull
+    public CaptureStats getCaptureStats() {
+        return new CaptureStats(submittedCaptures, confirmedCaptures, failedCaptures,
+                captureRetries, flashStateMismatches, totalCaptureLatencyNs, maxCaptureLatencyNs);
+    }
+
+    @AnyThread
+    @NonNull
+    public PatternStats getPatternStats() {
+        return new PatternStats(patternsPlayed, patternEdges, failedPatternFrames,
+                totalPatternErrorNs, maxPatternErrorNs);
+    }
+
+    @AnyThread
+    @NonNull
+    public RampStats getRampStats() {
+        return new RampStats(rampsStarted, rampsCompleted, rampSteps);
+    }
+
+    /** Get the number of times that a camera device was opened, including for pre-warming. */
+    @AnyThread
+    public long getCameraOpens() {
+        return cameraOpens;
+    }
+
+    /** Get the trace of recent events. */
+    @AnyThread
+    @NonNull
+    public TraceBuffer getTrace() {
+        return trace;
+    }
+
+    @WorkerThread
+    private void notifyTorchState() {
+        if (cameraId != null) {
+            callbacks.onTorchStateChanged(confirmedBrightness, maxBrightness);
+        }
+    }
+
+    /**
+     * Command statistics. Folded commands were superseded or cancelled out before the scheduler
+     * thread got to them. Stale callbacks are from camera devices or sessions that were abandoned.
+     */
+    public record CommandStats(long commands, long folded, long staleCallbacks) {}
+
+    /**
+     * Capture statistics. The latency is from submitting a capture until it completes, including
+     * completions that were rejected because of the flash state.
+     */
+    public record CaptureStats(
+            long submitted,
+            long confirmed,
+            long failed,
+            long retries,
+            long flashStateMismatches,
+            long totalLatencyNs,
+            long maxLatencyNs
+    ) {
+        public double meanLatencyMs() {
+            final var completed = confirmed + flashStateMismatches;
+            return completed > 0 ? totalLatencyNs / 1_000_000.0 / completed : 0.0;
+        }
+    }
+
+    /**
+     * Pattern statistics. The error of an edge is the difference between its sensor timestamp and
+     * its ideal time, measured from the first frame of the pattern. This includes the error from
+     * rounding the edge to a frame boundary.
+     */
+    public record PatternStats(
+            long patterns,
+            long edges,
+            long failedFrames,
+            long totalErrorNs,
+            long maxErrorNs
+    ) {
+        public double meanErrorMs() {
+            return edges > 0 ? totalErrorNs / 1_000_000.0 / edges : 0.0;
+        }
+    }
+
+    /**
+     * Brightness ramp statistics. Ramps that didn't complete were interrupted by another command.
+     * The steps are the captures submitted for intermediate levels.
+     */
+    public record RampStats(long ramps, long completed, long steps) {}
+
+    /**
+     * Pre-warm statistics. The head start is the total time that the camera was already being
+     * opened before the torch was turned on, summed across all hits.
+     */
+    public record PrewarmStats(int hits, int misses, long headStartMs) {}
+
+    public interface Settings {
+        /** Get the persisted brightness or {@code defaultValue} if there is none. */
+        int getBrightness(int defaultValue);
+
+        /** Whether the camera should be kept open after the torch turns off. */
+        boolean isWarmStandbyEnabled();
+
+        /** Get the strategy for new capture sessions. */
+        @NonNull
+        CaptureStrategy getCaptureStrategy();
+
+        /** Get the cached camera details if they are still trustworthy. */
+        @Nullable
+        CameraDetails getCameraDetails();
+
+        void setCameraDetails(@Nullable CameraDetails details);
+
+        /**
+         * Get the duration for {@link #FADE_DEFAULT} when the torch is turned on or off or 0 to not
+         * fade.
+         */
+        long getFadeDurationMs(boolean on);
+    }
+
+    /** Notifications from the state machine. These are invoked on the scheduler thread. */
+    public interface Callbacks {
+        @WorkerThread
+        void onTorchStateChanged(int curBrightness, int maxBrightness);
+
+        @WorkerThread
+        void onTorchError(@NonNull TorchError error);
+
+        /** Whether a foreground owner is needed to keep the torch on has changed. */
+        @WorkerThread
+        void onOwnerNeeded(boolean needed);
+
+        /**
+         * Run {@code runnable} on the scheduler thread once every {@link #onOwnerNeeded(boolean)}
+         * notification so far has been handled by the owner.
+         */
+        @WorkerThread
+        void runAfterOwnerUpdate(@NonNull Runnable runnable);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.core;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+
+import java.io.PrintWriter;
+import java.lang.invoke.VarHandle;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Fixed-size ring buffer of the most recent torch events. All storage is allocated up front and
+ * recording an event neither allocates nor locks, so it is cheap enough to leave on in the hot
+ * paths. Once the buffer is full, the oldest events are overwritten.
+ *
+ * <p>Any thread can record events. Each slot has a sequence number that is invalidated before the
+ * slot is written and published afterwards, so {@link #dump(PrintWriter)} skips slots that are
+ * being overwritten instead of printing torn events.
+ */
+public final class TraceBuffer {
+    public enum Event {
+        /** A brightness command was queued. The argument is the raw command. */
+        COMMAND,
+        /** The torch strength API was used. The argument is the brightness. */
+        TORCH_STRENGTH_SET,
+        /** The argument is the camera generation. */
+        CAMERA_OPEN,
+        /** The argument is the camera generation. */
+        CAMERA_OPENED,
+        /** The argument is the camera generation. */
+        SESSION_CONFIGURED,
+        /** The argument is the brightness. */
+        CAPTURE_SUBMITTED,
+        /** The brightness was confirmed by a completed capture. The argument is the brightness. */
+        CAPTURE_COMPLETED,
+        /** The capture failed or the flash state disagreed. The argument is the brightness. */
+        CAPTURE_FAILED,
+        /** The camera was closed or the torch turned off. The argument is the camera generation. */
+        CAMERA_CLOSED,
+        /** A {@link LightPattern} started playing. The argument is the number of frames. */
+        PATTERN_STARTED,
+        /** The pattern finished or was stopped. The argument is the number of edges measured. */
+        PATTERN_STOPPED,
+        /** A brightness ramp started. The argument is the target brightness. */
+        RAMP_STARTED,
+        /** The ramp reached its target. The argument is the number of steps submitted. */
+        RAMP_FINISHED,
+        /** The argument is the {@link TorchError} ordinal. */
+        ERROR,
+    }
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final LongSupplier clock;
+    private final int mask;
+    private final long[] timestamps;
+    private final int[] events;
+    private final long[] args;
+    // Index + 1 of the event in each slot, 0 if the slot was never written, or negative while the
+    // slot is being written.
+    private final AtomicLongArray sequences;
+    private final AtomicLong nextIndex = new AtomicLong();
+
+    /**
+     * @param capacity Number of events to keep. This is rounded up to a power of 2.
+     * @param clock Monotonic time in nanoseconds
+     */
+    public TraceBuffer(int capacity, @NonNull LongSupplier clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+
+        final var size = Integer.highestOneBit(capacity - 1) << 1;
+
+        this.clock = clock;
+        mask = Math.max(size, 1) - 1;
+        timestamps = new long[mask + 1];
+        events = new int[mask + 1];
+        args = new long[mask + 1];
+        sequences = new AtomicLongArray(mask + 1);
+    }
+
+    @AnyThread
+    public void record(@NonNull Event event, long arg) {
+        final var timestamp = clock.getAsLong();
+        final var index = nextIndex.getAndIncrement();
+        final var slot = (int) (index & mask);
+
+        sequences.set(slot, -1 - index);
+        VarHandle.storeStoreFence();
+
+        timestamps[slot] = timestamp;
+        events[slot] = event.ordinal();
+        args[slot] = arg;
+
+        sequences.set(slot, index + 1);
+    }
+
+    /** Total number of events recorded so far, including the ones that were overwritten. */
+    @AnyThread
+    public long getTotalEvents() {
+        return nextIndex.get();
+    }
+
+    /**
+     * Print the events that are still in the buffer, oldest first, with their time relative to
+     * now. The latencies between related events are derived from the same window: camera open,
+     * session configuration, capture, and how long each burst of commands took to settle.
+     */
+    @AnyThread
+    public void dump(@NonNull PrintWriter writer) {
+        final var now = clock.getAsLong();
+        final var end = nextIndex.get();
+        final var start = Math.max(0, end - (mask + 1));
+        final var eventTypes = Event.values();
+
+        final var open = new Latency("Camera open");
+        final var configure = new Latency("Session configure");
+        final var capture = new Latency("Capture");
+        final var command = new Latency("Command to settled");
+        long openTime = -1;
+        long openedTime = -1;
+        long submitTime = -1;
+        long commandTime = -1;
+
+        writer.printf(Locale.ROOT, "Trace (%d of %d events):%n", end - start, end);
+
+        for (long index = start; index < end; ++index) {
+            final var slot = (int) (index & mask);
+
+            final var sequence = sequences.get(slot);
+            final var timestamp = timestamps[slot];
+            final var eventOrdinal = events[slot];
+            final var arg = args[slot];
+            VarHandle.loadLoadFence();
+
+            if (sequence != index + 1 || sequences.get(slot) != sequence) {
+                // Being overwritten by a newer event.
+                continue;
+            }
+
+            final var event = eventTypes[eventOrdinal];
+            long latency = -1;
+
+            switch (event) {
+                case COMMAND -> {
+                    if (commandTime < 0) {
+                        commandTime = timestamp;
+                    }
+                }
+                case CAMERA_OPEN -> openTime = timestamp;
+                case CAMERA_OPENED -> {
+                    latency = open.add(openTime, timestamp);
+                    openTime = -1;
+                    openedTime = timestamp;
+                }
+                case SESSION_CONFIGURED -> {
+                    latency = configure.add(openedTime, timestamp);
+                    openedTime = -1;
+                }
+                case CAPTURE_SUBMITTED -> submitTime = timestamp;
+                case CAPTURE_COMPLETED, CAPTURE_FAILED -> {
+                    latency = capture.add(submitTime, timestamp);
+                    submitTime = -1;
+                }
+                default -> {}
+            }
+
+            if (event == Event.CAPTURE_COMPLETED || event == Event.TORCH_STRENGTH_SET
+                    || event == Event.CAMERA_CLOSED) {
+                final var settled = command.add(commandTime, timestamp);
+                commandTime = -1;
+
+                if (latency < 0) {
+                    latency = settled;
+                }
+            }
+
+            writer.printf(Locale.ROOT, "  %12.3fms %s %s", (timestamp - now) / 1_000_000.0,
+                    event, event == Event.ERROR ? TorchError.values()[(int) arg] : arg);
+            if (latency >= 0) {
+                writer.printf(Locale.ROOT, " (+%.3fms)", latency / 1_000_000.0);
+            }
+            writer.println();
+        }
+
+        writer.println("Latencies:");
+        open.dump(writer);
+        configure.dump(writer);
+        capture.dump(writer);
+        command.dump(writer);
+    }
+
+    private static final class Latency {
+        private final String name;
+        private int count;
+        private long totalNs;
+        private long maxNs;
+
+        private Latency(@NonNull String name) {
+            this.name = name;
+        }
+
+        /** @return The latency or -1 if there was no start event */
+        private long add(long startNs, long endNs) {
+            if (startNs < 0) {
+                return -1;
+            }
+
+            final var latencyNs = endNs - startNs;
+            ++count;
+            totalNs += latencyNs;
+            maxNs = Math.max(maxNs, latencyNs);
+
+            return latencyNs;
+        }
+
+        private void dump(@NonNull PrintWriter writer) {
+            if (count == 0) {
+                writer.printf(Locale.ROOT, "  %s: none%n", name);
+            } else {
+                writer.printf(Locale.ROOT, "  %s: n=%d, mean=%.3fms, max=%.3fms%n", name, count,
+                        totalNs / 1_000_000.0 / count, maxNs / 1_000_000.0);
+            }
+        }
+    }
+}
@@ -19,3 +19,6 @@ dependencyResolutionManagement {
 }
 rootProject.name = "PixelLight"
 include(":app")
+include(":core")
+include(":benchmark")
+include(":simulator")
@@ -0,0 +1,58 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+// Simulated camera backend for the core module and a stress runner that replays command traces
+// against it. Run with:
+//
+//     ./gradlew :simulator:stress
+//
+// Extra arguments can be passed with -PstressArgs, eg. -PstressArgs="--runs 1000 --config flaky".
+// The trace replay, along with the stressPatterns and stressFades tasks, is also part of the check
+// task. Each of them fails if the torch is left in the wrong state.
+plugins {
+    `java-library`
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    }
+}
+
+dependencies {
+    api(project(":core"))
+    compileOnly(libs.androidx.annotation)
+}
+
+val stress = tasks.register<JavaExec>("stress") {
+    description = "Replays command traces against the simulated camera."
+    group = "verification"
+
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.chiller3.pixellight.simulator.StressRunner")
+    args(providers.gradleProperty("stressArgs").map { it.split(' ') }.getOrElse(emptyList()))
+}
+
+val stressPatterns = tasks.register<JavaExec>("stressPatterns") {
+    description = "Plays light patterns against the simulated camera."
+    group = "verification"
+
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.chiller3.pixellight.simulator.StressRunner")
+    args("--patterns")
+}
+
+val stressFades = tasks.register<JavaExec>("stressFades") {
+    description = "Fades the torch on and off against the simulated camera."
+    group = "verification"
+
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.chiller3.pixellight.simulator.StressRunner")
+    args("--fades")
+}
+
+tasks.named("check") {
+    dependsOn(stress, stressPatterns, stressFades)
+}
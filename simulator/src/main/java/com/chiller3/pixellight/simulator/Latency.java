@@ -0,0 +1,51 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.simulator;
+
+import androidx.annotation.NonNull;
+
+import java.util.random.RandomGenerator;
+
+/** A latency distribution for a simulated camera operation. */
+public interface Latency {
+    /** Draw a latency in nanoseconds. */
+    long sampleNs(@NonNull RandomGenerator random);
+
+    Latency NONE = random -> 0;
+
+    @NonNull
+    static Latency fixed(double ms) {
+        final var ns = msToNs(ms);
+        return random -> ns;
+    }
+
+    @NonNull
+    static Latency uniform(double minMs, double maxMs) {
+        final var minNs = msToNs(minMs);
+        final var maxNs = msToNs(maxMs);
+        return random -> minNs == maxNs ? minNs : random.nextLong(minNs, maxNs + 1);
+    }
+
+    /**
+     * A log-normal distribution, which has the long tail that camera operations tend to have. It
+     * is parameterized by its median and 99th percentile.
+     */
+    @NonNull
+    static Latency logNormal(double medianMs, double p99Ms) {
+        if (p99Ms < medianMs) {
+            throw new IllegalArgumentException("p99 (" + p99Ms + ") < median (" + medianMs + ")");
+        }
+
+        final var mu = Math.log(medianMs);
+        // z-score of the 99th percentile of the standard normal distribution.
+        final var sigma = Math.log(p99Ms / medianMs) / 2.3263;
+        return random -> msToNs(Math.exp(mu + sigma * random.nextGaussian()));
+    }
+
+    private static long msToNs(double ms) {
+        return Math.round(ms * 1_000_000);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.simulator;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.chiller3.pixellight.core.CameraDetails;
+import com.chiller3.pixellight.core.CaptureStrategy;
+import com.chiller3.pixellight.core.TorchStateMachine;
+
+/** {@link TorchStateMachine.Settings} that are only kept in memory. */
+public class MemorySettings implements TorchStateMachine.Settings {
+    private final int brightness;
+    private final boolean warmStandby;
+    private final CaptureStrategy captureStrategy;
+    private final long fadeMs;
+    private CameraDetails cameraDetails = null;
+
+    public MemorySettings(int brightness, boolean warmStandby) {
+        this(brightness, warmStandby, CaptureStrategy.SINGLE);
+    }
+
+    public MemorySettings(int brightness, boolean warmStandby,
+                          @NonNull CaptureStrategy captureStrategy) {
+        this(brightness, warmStandby, captureStrategy, 0);
+    }
+
+    /** {@code fadeMs} is used for both fading on and fading off. */
+    public MemorySettings(int brightness, boolean warmStandby,
+                          @NonNull CaptureStrategy captureStrategy, long fadeMs) {
+        this.brightness = brightness;
+        this.warmStandby = warmStandby;
+        this.captureStrategy = captureStrategy;
+        this.fadeMs = fadeMs;
+    }
+
+    @Override
+    public int getBrightness(int defaultValue) {
+        return brightness;
+    }
+
+    @Override
+    public boolean isWarmStandbyEnabled() {
+        return warmStandby;
+    }
+
+    @Override
+    @NonNull
+    public CaptureStrategy getCaptureStrategy() {
+        return captureStrategy;
+    }
+
+    @Override
+    @Nullable
+    public CameraDetails getCameraDetails() {
+        return cameraDetails;
+    }
+
+    @Override
+    public void setCameraDetails(@Nullable CameraDetails details) {
+        cameraDetails = details;
+    }
+
+    @Override
+    public long getFadeDurationMs(boolean on) {
+        return fadeMs;
+    }
+}
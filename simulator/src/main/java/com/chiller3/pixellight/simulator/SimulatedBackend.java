@@ -0,0 +1,632 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.simulator;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.chiller3.pixellight.core.CameraBackend;
+import com.chiller3.pixellight.core.CameraDetails;
+import com.chiller3.pixellight.core.CameraException;
+import com.chiller3.pixellight.core.CaptureStrategy;
+import com.chiller3.pixellight.core.TorchError;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * A simulated camera2 stack for the {@link VirtualScheduler}. It models opening the camera device,
+ * configuring the session, captures, and the torch strength API with configurable latencies, as
+ * well as failures, like another client holding the camera or the camera being disconnected.
+ *
+ * <p>Like camera2, captures complete in submission order. Opening the camera turns off the torch
+ * and reports it as unavailable until the camera is closed. Every {@link CaptureStrategy} is
+ * supported. A repeating request produces frames at {@link #REPEATING_FRAME_PERIOD_NS} until it is
+ * stopped, but only the first one can fail or disconnect the camera. Pattern frames are paced by
+ * their frame duration, like a real sensor, and any of them can fail. Like a real sensor, the
+ * reported timestamps jitter, the sensor clock drifts, and a frame slot is occasionally missed,
+ * which delays every later frame.
+ *
+ * <p>The client-side CPU cost of camera2 is modelled as a fixed cost per submitted request and per
+ * delivered result so that the strategies can be compared with {@link #getCpuTimeNs()}.
+ *
+ * <p>With {@link Config#IDEAL}, every callback is posted without delay and the capture path does
+ * not allocate so that allocations in the state machine stand out in benchmarks.
+ */
+public class SimulatedBackend implements CameraBackend {
+    /**
+     * Simulated timings and failure rates. The rates are probabilities per operation.
+     *
+     * @param open Time until a camera device is opened
+     * @param session Time until a capture session is configured
+     * @param capture Time until a capture completes
+     * @param torch Time until the torch strength API takes effect
+     * @param openFailureRate Probability that opening the camera fails with {@code openError}
+     * @param openError Error reported when opening the camera fails
+     * @param captureFailureRate Probability that a capture fails without changing the torch
+     * @param disconnectRate Probability that the camera is disconnected instead of completing a
+     *                       capture
+     * @param timestampJitterNs Largest error of a pattern frame timestamp in either direction
+     * @param clockDriftPpm How much longer every pattern frame is than requested, in parts per
+     *                      million
+     * @param frameDropRate Probability that the sensor misses a pattern frame slot
+     */
+    public record Config(
+            @NonNull Latency open,
+            @NonNull Latency session,
+            @NonNull Latency capture,
+            @NonNull Latency torch,
+            double openFailureRate,
+            @NonNull TorchError openError,
+            double captureFailureRate,
+            double disconnectRate,
+            long timestampJitterNs,
+            double clockDriftPpm,
+            double frameDropRate
+    ) {
+        /** No latency and no failures. */
+        public static final Config IDEAL = new Config(
+                Latency.NONE, Latency.NONE, Latency.NONE, Latency.NONE,
+                0, TorchError.IN_USE, 0, 0,
+                0, 0, 0);
+
+        /** Rough timings of a healthy device. */
+        public static final Config TYPICAL = new Config(
+                Latency.logNormal(120, 350),
+                Latency.logNormal(60, 200),
+                Latency.uniform(25, 50),
+                Latency.uniform(5, 20),
+                0, TorchError.IN_USE, 0, 0,
+                50_000, 50, 0);
+
+        /** Typical timings with other camera clients getting in the way. */
+        public static final Config FLAKY = new Config(
+                TYPICAL.open, TYPICAL.session, TYPICAL.capture, TYPICAL.torch,
+                0.05, TorchError.IN_USE, 0.02, 0.01,
+                200_000, 200, 0.005);
+    }
+
+    // Rough client-side CPU cost of submitting a request and of receiving its result.
+    private static final long REQUEST_CPU_NS = 150_000;
+    private static final long RESULT_CPU_NS = 60_000;
+    public static final long REPEATING_FRAME_PERIOD_NS = 1_000_000_000L / 15;
+    public static final long MIN_FRAME_DURATION_NS = 1_000_000_000L / 30;
+
+    /** Notified whenever the simulated LED turns on or off. */
+    public interface LightListener {
+        void onLightChanged(boolean lit);
+    }
+
+    private final VirtualScheduler scheduler;
+    private final CameraDetails details;
+    private final Config config;
+    private final SplittableRandom random;
+    private final ArrayList<TorchCallback> torchCallbacks = new ArrayList<>();
+    private LightListener lightListener = null;
+
+    private Device currentDevice = null;
+    private boolean torchOn = false;
+    private boolean lit = false;
+    private int pendingOpens = 0;
+    private int openDevices = 0;
+    private long lastTorchNs = 0;
+
+    // Statistics.
+    private long opens = 0;
+    private long captures = 0;
+    private long torchCalls = 0;
+    private int maxConcurrentDevices = 0;
+    private long cpuTimeNs = 0;
+    private long droppedPatternFrames = 0;
+
+    public SimulatedBackend(@NonNull VirtualScheduler scheduler, @NonNull CameraDetails details,
+                            @NonNull Config config, long seed) {
+        this.scheduler = scheduler;
+        this.details = details;
+        this.config = config;
+        random = new SplittableRandom(seed);
+    }
+
+    public void setLightListener(@Nullable LightListener listener) {
+        lightListener = listener;
+    }
+
+    public boolean isLit() {
+        return lit;
+    }
+
+    public long getOpens() {
+        return opens;
+    }
+
+    public long getCaptures() {
+        return captures;
+    }
+
+    public long getTorchCalls() {
+        return torchCalls;
+    }
+
+    /** Simulated client-side CPU time spent on capture requests and results. */
+    public long getCpuTimeNs() {
+        return cpuTimeNs;
+    }
+
+    /** Pattern frame slots that the sensor missed. Every one delays the later frames. */
+    public long getDroppedPatternFrames() {
+        return droppedPatternFrames;
+    }
+
+    /** The most camera devices that were open or being opened at the same time. */
+    public int getMaxConcurrentDevices() {
+        return maxConcurrentDevices;
+    }
+
+    /** Disconnect the open camera device now, like a higher priority client would. */
+    public void disconnect() {
+        if (currentDevice != null) {
+            currentDevice.disconnect();
+        }
+    }
+
+    private void setLit(boolean lit) {
+        if (this.lit != lit) {
+            this.lit = lit;
+
+            if (lightListener != null) {
+                lightListener.onLightChanged(lit);
+            }
+        }
+    }
+
+    private void updateConcurrentDevices() {
+        maxConcurrentDevices = Math.max(maxConcurrentDevices, pendingOpens + openDevices);
+    }
+
+    private boolean roll(double probability) {
+        return probability > 0 && random.nextDouble() < probability;
+    }
+
+    private void post(@NonNull Runnable runnable, @NonNull Latency latency) {
+        scheduler.postDelayedNs(runnable, latency.sampleNs(random));
+    }
+
+    /** Like {@link #post(Runnable, Latency)}, but torch strength API calls take effect in order. */
+    private void postTorch(@NonNull Runnable runnable) {
+        final var now = scheduler.nanoTime();
+        lastTorchNs = Math.max(now + config.torch().sampleNs(random), lastTorchNs);
+
+        scheduler.postDelayedNs(runnable, lastTorchNs - now);
+    }
+
+    private void notifyTorchModeChanged(@NonNull String cameraId, boolean enabled) {
+        for (final var callback : torchCallbacks) {
+            callback.onTorchModeChanged(cameraId, enabled);
+        }
+    }
+
+    private void checkCameraId(@NonNull String cameraId) throws CameraException {
+        if (!cameraId.equals(details.cameraId())) {
+            throw new CameraException(TorchError.NO_VALID_CAMERA, null);
+        }
+    }
+
+    @Override
+    @Nullable
+    public CameraDetails queryCameraDetails() {
+        return details;
+    }
+
+    @Override
+    public void turnOnTorch(@NonNull String cameraId, int strength) throws CameraException {
+        checkCameraId(cameraId);
+        ++torchCalls;
+
+        if (strength < 1 || strength > details.maxTorchStrength()) {
+            // Same as the IllegalArgumentException from the real camera service.
+            throw new CameraException(TorchError.NO_VALID_CAMERA, null);
+        }
+
+        if (currentDevice != null) {
+            throw new CameraException(TorchError.IN_USE, null);
+        }
+
+        postTorch(() -> {
+            // The camera may have been opened in the meantime.
+            if (currentDevice == null) {
+                torchOn = true;
+                setLit(true);
+                notifyTorchModeChanged(cameraId, true);
+            }
+        });
+    }
+
+    @Override
+    public void turnOffTorch(@NonNull String cameraId) throws CameraException {
+        checkCameraId(cameraId);
+        ++torchCalls;
+
+        if (currentDevice != null) {
+            throw new CameraException(TorchError.IN_USE, null);
+        }
+
+        postTorch(() -> {
+            if (torchOn) {
+                torchOn = false;
+                setLit(false);
+                notifyTorchModeChanged(cameraId, false);
+            }
+        });
+    }
+
+    @Override
+    public void registerTorchCallback(@NonNull TorchCallback callback) {
+        torchCallbacks.add(callback);
+    }
+
+    @Override
+    public void unregisterTorchCallback(@NonNull TorchCallback callback) {
+        torchCallbacks.remove(callback);
+    }
+
+    @Override
+    public void openCamera(@NonNull String cameraId, @NonNull DeviceCallback callback)
+            throws CameraException {
+        checkCameraId(cameraId);
+        ++opens;
+
+        final var device = new Device(cameraId, callback);
+        ++pendingOpens;
+        updateConcurrentDevices();
+
+        post(device::onOpenFinished, config.open());
+    }
+
+    private class Device implements CameraBackend.Device {
+        private final String id;
+        private final DeviceCallback callback;
+        private Session session = null;
+        private boolean opened = false;
+        private boolean closed = false;
+        private boolean disconnected = false;
+
+        private Device(@NonNull String id, @NonNull DeviceCallback callback) {
+            this.id = id;
+            this.callback = callback;
+        }
+
+        private void onOpenFinished() {
+            --pendingOpens;
+
+            if (roll(config.openFailureRate())) {
+                callback.onError(this, config.openError());
+                return;
+            }
+
+            // Camera2 evicts the previous client when a new one opens the same camera.
+            if (currentDevice != null && !currentDevice.closed) {
+                currentDevice.disconnect();
+            }
+
+            opened = true;
+            ++openDevices;
+            updateConcurrentDevices();
+            currentDevice = this;
+
+            if (torchOn) {
+                torchOn = false;
+                setLit(false);
+            }
+            for (final var torchCallback : torchCallbacks) {
+                torchCallback.onTorchModeUnavailable(id);
+            }
+
+            callback.onOpened(this);
+        }
+
+        private void disconnect() {
+            if (closed || disconnected) {
+                return;
+            }
+
+            disconnected = true;
+            release();
+            callback.onDisconnected(this);
+        }
+
+        /** Release the camera without the client knowing about it yet. */
+        private void release() {
+            if (currentDevice == this) {
+                currentDevice = null;
+                setLit(false);
+                notifyTorchModeChanged(id, false);
+            }
+        }
+
+        private boolean isUsable() {
+            return opened && !closed && !disconnected;
+        }
+
+        @Override
+        @NonNull
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public void createSession(int maxBrightness, @NonNull CaptureStrategy strategy,
+                                  @NonNull SessionCallback callback) throws CameraException {
+            if (!isUsable()) {
+                throw new CameraException(TorchError.DISCONNECTED, null);
+            }
+
+            final var session = new Session(this, strategy, callback);
+            this.session = session;
+
+            post(() -> {
+                if (isUsable() && this.session == session) {
+                    callback.onConfigured(session);
+                }
+            }, config.session());
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            session = null;
+
+            if (opened) {
+                --openDevices;
+                release();
+            }
+        }
+    }
+
+    private class Session implements CameraBackend.Session {
+        private final Device device;
+        private final CaptureStrategy strategy;
+        private final SessionCallback callback;
+        // Brightness of each capture in flight and whether its completion is reported to the
+        // callback, in submission order. Only the last capture of a burst is reported.
+        private final ArrayDeque<Integer> inFlight = new ArrayDeque<>();
+        private final ArrayDeque<Boolean> inFlightReported = new ArrayDeque<>();
+        private final Runnable completion = this::onCaptureFinished;
+        private final Runnable repeatingFrame = this::onRepeatingFrame;
+        private long lastCompletionNs = 0;
+        // Whether an earlier capture of the current burst failed.
+        private boolean burstFailed = false;
+        // Brightness of the repeating request or -1 if there is none.
+        private int repeatingBrightness = -1;
+        private boolean repeatingReportPending = false;
+        // Levels of the pattern that is playing or null if there is none.
+        private int[] patternLevels = null;
+        private long patternFrameDurationNs;
+        private boolean patternRepeating;
+        private PatternCallback patternCallback;
+        private long patternFrame;
+        // Sensor time of the first pattern frame and frame slots since then, including missed ones.
+        private long patternStartNs;
+        private long patternSlot;
+        private final Runnable patternFrameRunnable = this::onPatternFrame;
+
+        private Session(@NonNull Device device, @NonNull CaptureStrategy strategy,
+                        @NonNull SessionCallback callback) {
+            this.device = device;
+            this.strategy = strategy;
+            this.callback = callback;
+        }
+
+        private boolean isCurrent() {
+            return device.isUsable() && device.session == this;
+        }
+
+        @Override
+        public void prepare(int brightness) {}
+
+        @Override
+        public void capture(int brightness) throws CameraException {
+            if (!isCurrent()) {
+                throw new CameraException(TorchError.DISCONNECTED, null);
+            }
+
+            stopPattern();
+
+            switch (strategy) {
+                case SINGLE -> submit(brightness, true);
+                case BURST -> {
+                    for (int i = 1; i <= CaptureStrategy.BURST_SIZE; ++i) {
+                        submit(brightness, i == CaptureStrategy.BURST_SIZE);
+                    }
+                }
+                case REPEATING -> {
+                    scheduler.removeCallbacks(repeatingFrame);
+
+                    if (brightness == 0) {
+                        // Callers wait for the previous completion before changing the level, so
+                        // there is never a pending report to drop here.
+                        repeatingBrightness = -1;
+                        repeatingReportPending = false;
+                        submit(0, true);
+                    } else {
+                        ++captures;
+                        cpuTimeNs += REQUEST_CPU_NS;
+                        repeatingBrightness = brightness;
+                        repeatingReportPending = true;
+                        post(repeatingFrame, config.capture());
+                    }
+                }
+            }
+        }
+
+        @Override
+        public long getMinFrameDurationNs() {
+            return MIN_FRAME_DURATION_NS;
+        }
+
+        @Override
+        public void playPattern(@NonNull int[] levels, long frameDurationNs, boolean repeat,
+                                @NonNull PatternCallback callback) throws CameraException {
+            if (!isCurrent()) {
+                throw new CameraException(TorchError.DISCONNECTED, null);
+            } else if (frameDurationNs < MIN_FRAME_DURATION_NS) {
+                throw new IllegalArgumentException("Frame duration too short: " + frameDurationNs);
+            }
+
+            stopPattern();
+            scheduler.removeCallbacks(repeatingFrame);
+            repeatingBrightness = -1;
+            repeatingReportPending = false;
+
+            captures += levels.length;
+            cpuTimeNs += REQUEST_CPU_NS * levels.length;
+            patternLevels = levels;
+            patternFrameDurationNs = frameDurationNs;
+            patternRepeating = repeat;
+            patternCallback = callback;
+            patternFrame = 0;
+
+            post(patternFrameRunnable, config.capture());
+        }
+
+        private void stopPattern() {
+            scheduler.removeCallbacks(patternFrameRunnable);
+            patternLevels = null;
+            patternCallback = null;
+        }
+
+        private void onPatternFrame() {
+            if (!isCurrent() || patternLevels == null) {
+                return;
+            }
+
+            final var callback = patternCallback;
+            final var frame = patternFrame++;
+
+            if (!patternRepeating && frame == patternLevels.length) {
+                stopPattern();
+                callback.onPatternFinished(this);
+                return;
+            }
+
+            cpuTimeNs += RESULT_CPU_NS;
+
+            final var nowNs = scheduler.nanoTime();
+            if (frame == 0) {
+                patternStartNs = nowNs;
+                patternSlot = 0;
+            }
+
+            ++patternSlot;
+            while (roll(config.frameDropRate())) {
+                ++patternSlot;
+                ++droppedPatternFrames;
+            }
+
+            // Queue the next frame first so that a new pattern or capture from the callback
+            // replaces it. The slots are computed from the first frame so that the drift doesn't
+            // pick up rounding errors.
+            final var periodNs = patternFrameDurationNs * (1 + config.clockDriftPpm() / 1_000_000);
+            final var nextNs = patternStartNs + Math.round(patternSlot * periodNs);
+            scheduler.postDelayedNs(patternFrameRunnable, nextNs - nowNs);
+
+            if (roll(config.captureFailureRate())) {
+                callback.onPatternFrame(this, frame, -1);
+            } else {
+                setLit(patternLevels[(int) (frame % patternLevels.length)] > 0);
+
+                var timestampNs = nowNs;
+                if (config.timestampJitterNs() > 0) {
+                    timestampNs += random.nextLong(-config.timestampJitterNs(),
+                            config.timestampJitterNs() + 1);
+                }
+
+                callback.onPatternFrame(this, frame, timestampNs);
+            }
+        }
+
+        private void submit(int brightness, boolean reported) {
+            ++captures;
+            cpuTimeNs += REQUEST_CPU_NS;
+            inFlight.addLast(brightness);
+            inFlightReported.addLast(reported);
+
+            // Captures complete in order, no matter how long each one takes.
+            final var now = scheduler.nanoTime();
+            final var completionNs = Math.max(now + config.capture().sampleNs(random),
+                    lastCompletionNs);
+            lastCompletionNs = completionNs;
+
+            scheduler.postDelayedNs(completion, completionNs - now);
+        }
+
+        private void onCaptureFinished() {
+            final int brightness = inFlight.removeFirst();
+            final boolean reported = inFlightReported.removeFirst();
+
+            if (!isCurrent()) {
+                return;
+            }
+
+            cpuTimeNs += RESULT_CPU_NS;
+
+            if (roll(config.disconnectRate())) {
+                device.disconnect();
+            } else if (roll(config.captureFailureRate())) {
+                if (reported) {
+                    burstFailed = false;
+                    callback.onCaptureFailed(this);
+                } else {
+                    burstFailed = true;
+                }
+            } else {
+                setLit(brightness > 0);
+
+                if (reported) {
+                    final var failed = burstFailed;
+                    burstFailed = false;
+
+                    if (failed) {
+                        callback.onCaptureFailed(this);
+                    } else {
+                        callback.onCaptureCompleted(this, lit ? FlashState.ON : FlashState.OFF);
+                    }
+                }
+            }
+        }
+
+        private void onRepeatingFrame() {
+            if (!isCurrent() || repeatingBrightness < 0) {
+                return;
+            }
+
+            cpuTimeNs += RESULT_CPU_NS;
+
+            // Queue the next frame first so that a new repeating request from the callback
+            // replaces it.
+            scheduler.postDelayedNs(repeatingFrame, REPEATING_FRAME_PERIOD_NS);
+
+            if (!repeatingReportPending) {
+                return;
+            }
+
+            repeatingReportPending = false;
+
+            if (roll(config.disconnectRate())) {
+                device.disconnect();
+            } else if (roll(config.captureFailureRate())) {
+                callback.onCaptureFailed(this);
+            } else {
+                setLit(true);
+                callback.onCaptureCompleted(this, FlashState.ON);
+            }
+        }
+    }
+}
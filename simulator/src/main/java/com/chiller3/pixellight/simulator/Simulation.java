@@ -0,0 +1,169 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.simulator;
+
+import androidx.annotation.NonNull;
+
+import com.chiller3.pixellight.core.CameraDetails;
+import com.chiller3.pixellight.core.CaptureStrategy;
+import com.chiller3.pixellight.core.TorchError;
+import com.chiller3.pixellight.core.TorchStateMachine;
+
+import java.util.ArrayList;
+
+/**
+ * A single replay of a {@link Trace} against a fresh {@link TorchStateMachine} and
+ * {@link SimulatedBackend}.
+ *
+ * <p>Time-to-light is measured from the command that should turn on the torch while it is off to
+ * the moment the simulated LED actually turns on. Commands that are cancelled before the light
+ * turns on are not counted.
+ */
+public class Simulation {
+    /** How long to keep running after the last event so that everything can settle. */
+    private static final long SETTLE_TIME_MS = 10_000;
+
+    /**
+     * @param timeToLightNs Time-to-light of every turn-on command, in the order they happened
+     * @param cpuTimeNs Simulated client-side CPU time spent on the camera
+     * @param errors Number of errors reported to the user
+     * @param expectLit Whether the torch should be on, according to the commands and errors
+     * @param litAtEnd Whether the torch was actually on after everything settled
+     * @param reportedLitAtEnd Whether the last state reported to the callbacks was on
+     */
+    public record Result(
+            @NonNull long[] timeToLightNs,
+            long captures,
+            long opens,
+            long torchCalls,
+            int maxConcurrentDevices,
+            long cpuTimeNs,
+            @NonNull TorchStateMachine.CommandStats commandStats,
+            int errors,
+            boolean expectLit,
+            boolean litAtEnd,
+            boolean reportedLitAtEnd
+    ) {
+        /**
+         * Whether the final torch state contradicts the trace or what the user was told. The torch
+         * must never be left on after being turned off or left off after being turned on. Errors
+         * reported to the user count as turning the torch off.
+         */
+        public boolean isFinalStateWrong() {
+            return expectLit != litAtEnd || reportedLitAtEnd != litAtEnd;
+        }
+    }
+
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final SimulatedBackend backend;
+    private final TorchStateMachine machine;
+    private final ArrayList<Long> timeToLight = new ArrayList<>();
+    private long lightRequestNs = -1;
+    private boolean expectLit = false;
+    private boolean reportedLit = false;
+    private int errors = 0;
+
+    public Simulation(@NonNull CameraDetails details, @NonNull SimulatedBackend.Config config,
+                      boolean warmStandby, long seed) {
+        this(details, config, warmStandby, CaptureStrategy.SINGLE, seed);
+    }
+
+    public Simulation(@NonNull CameraDetails details, @NonNull SimulatedBackend.Config config,
+                      boolean warmStandby, @NonNull CaptureStrategy strategy, long seed) {
+        backend = new SimulatedBackend(scheduler, details, config, seed);
+        backend.setLightListener(this::onLightChanged);
+
+        final var callbacks = new TorchStateMachine.Callbacks() {
+            @Override
+            public void onTorchStateChanged(int curBrightness, int maxBrightness) {
+                reportedLit = curBrightness > 0;
+            }
+
+            @Override
+            public void onTorchError(@NonNull TorchError error) {
+                ++errors;
+                // The torch is off now, which affects what the next toggle does.
+                expectLit = false;
+                lightRequestNs = -1;
+            }
+
+            @Override
+            public void onOwnerNeeded(boolean needed) {}
+
+            @Override
+            public void runAfterOwnerUpdate(@NonNull Runnable runnable) {
+                scheduler.post(runnable);
+            }
+        };
+
+        machine = new TorchStateMachine(scheduler, backend,
+                new MemorySettings(details.maxBrightness(), warmStandby, strategy), callbacks);
+    }
+
+    private void onLightChanged(boolean lit) {
+        if (lit && lightRequestNs >= 0) {
+            timeToLight.add(scheduler.nanoTime() - lightRequestNs);
+            lightRequestNs = -1;
+        }
+    }
+
+    private void onCommand(boolean turnOn) {
+        expectLit = turnOn;
+
+        if (!turnOn) {
+            lightRequestNs = -1;
+        } else if (!backend.isLit() && lightRequestNs < 0) {
+            lightRequestNs = scheduler.nanoTime();
+        }
+    }
+
+    @NonNull
+    public Result run(@NonNull Trace trace) {
+        machine.refreshCameras();
+        scheduler.runPending();
+
+        for (final var event : trace.events()) {
+            // Events with the same timestamp arrive before the scheduler thread gets to run.
+            final var timeNs = event.timeMs() * 1_000_000;
+            if (timeNs > scheduler.nanoTime()) {
+                scheduler.advanceTo(timeNs);
+            }
+
+            switch (event.action()) {
+                case SET -> {
+                    onCommand(event.brightness() > 0);
+                    machine.submitBrightness(event.brightness());
+                }
+                case TOGGLE -> {
+                    onCommand(!expectLit);
+                    machine.submitBrightness(TorchStateMachine.BRIGHTNESS_TOGGLE);
+                }
+                case PERSISTED -> {
+                    onCommand(true);
+                    machine.submitBrightness(TorchStateMachine.BRIGHTNESS_PERSISTED);
+                }
+                case PREWARM -> machine.prewarm(true);
+                case DISCONNECT -> backend.disconnect();
+            }
+        }
+
+        scheduler.advanceBy(SETTLE_TIME_MS * 1_000_000);
+        machine.release();
+
+        return new Result(
+                timeToLight.stream().mapToLong(Long::longValue).toArray(),
+                backend.getCaptures(),
+                backend.getOpens(),
+                backend.getTorchCalls(),
+                backend.getMaxConcurrentDevices(),
+                backend.getCpuTimeNs(),
+                machine.getCommandStats(),
+                errors,
+                expectLit,
+                backend.isLit(),
+                reportedLit);
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.simulator;
+
+import androidx.annotation.NonNull;
+
+import com.chiller3.pixellight.core.CameraDetails;
+import com.chiller3.pixellight.core.CaptureCalibrator;
+import com.chiller3.pixellight.core.CaptureStrategy;
+import com.chiller3.pixellight.core.LightPattern;
+import com.chiller3.pixellight.core.TorchError;
+import com.chiller3.pixellight.core.TorchStateMachine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays command traces against the simulated camera many times with different random seeds and
+ * reports the time-to-light percentiles and the amount of camera work per run.
+ *
+ * <p>Usage: {@code StressRunner [--runs <n>] [--seed <n>] [--config <name>]
+ * [--strategy <name>] [--calibrate] [--patterns] [--fades] [<trace file>...]}
+ *
+ * <p>Without trace files, the bundled traces are used. Without {@code --strategy}, only
+ * {@link CaptureStrategy#SINGLE} is simulated. The exit status is 1 if any run opened more than one
+ * camera device at a time or left the torch in the wrong state.
+ *
+ * <p>With {@code --calibrate}, the {@link CaptureCalibrator} is run against each configuration
+ * instead of replaying traces. With {@code --patterns}, a few {@link LightPattern}s are played
+ * instead and the edge timing error is reported. Strobes loop until they are turned off and the
+ * rest play once. The exit status is 1 if the torch is left on afterwards or if an edge was
+ * further off than the frame rounding, the simulated sensor timing, and the missed frames
+ * account for. With {@code --fades}, the
+ * torch is faded on and off again and the number of ramp steps is reported. The exit status is 1
+ * if the torch is left on or if a ramp that no camera error got in the way of missed its target.
+ */
+public class StressRunner {
+    private static final List<String> BUNDLED_TRACES =
+            List.of("toggle_storm", "slider_drag", "disconnect");
+
+    private static final List<String> PATTERNS =
+            List.of("strobe:10", "strobe:4", "sos", "morse:PIXEL LIGHT");
+    private static final long PATTERN_MIN_RUN_MS = 5_000;
+    private static final long PATTERN_SETTLE_MS = 10_000;
+    private static final long PATTERN_ERROR_SLACK_NS = 1_000_000;
+
+    private static final long FADE_MS = 1_000;
+    private static final long FADE_SETTLE_MS = 5_000;
+
+    private static final LinkedHashMap<String, SimulatedBackend.Config> CONFIGS =
+            new LinkedHashMap<>();
+
+    static {
+        CONFIGS.put("ideal", SimulatedBackend.Config.IDEAL);
+        CONFIGS.put("typical", SimulatedBackend.Config.TYPICAL);
+        CONFIGS.put("flaky", SimulatedBackend.Config.FLAKY);
+    }
+
+    // Levels above the torch strength range need a camera session, like the persisted brightness.
+    private static final CameraDetails DETAILS = new CameraDetails("0", 45, 5);
+
+    private record Summary(
+            @NonNull String trace,
+            @NonNull String config,
+            @NonNull CaptureStrategy strategy,
+            boolean warmStandby,
+            int runs,
+            @NonNull long[] timeToLightNs,
+            double captures,
+            double opens,
+            double torchCalls,
+            double cpuMs,
+            double folded,
+            double stale,
+            double errors,
+            int maxConcurrentDevices,
+            int wrongFinalStates
+    ) {
+        private boolean failed() {
+            return maxConcurrentDevices > 1 || wrongFinalStates > 0;
+        }
+    }
+
+    private static double percentileMs(@NonNull long[] sortedNs, double percentile) {
+        if (sortedNs.length == 0) {
+            return Double.NaN;
+        }
+
+        final var rank = (int) Math.ceil(percentile / 100 * sortedNs.length);
+        return sortedNs[Math.max(rank - 1, 0)] / 1_000_000.0;
+    }
+
+    @NonNull
+    private static Summary simulate(@NonNull Trace trace, @NonNull String configName,
+                                    @NonNull CaptureStrategy strategy, boolean warmStandby,
+                                    int runs, long seed) {
+        final var config = CONFIGS.get(configName);
+        final var timeToLight = new ArrayList<long[]>();
+        long captures = 0;
+        long opens = 0;
+        long torchCalls = 0;
+        long cpuTimeNs = 0;
+        long folded = 0;
+        long stale = 0;
+        long errors = 0;
+        int maxConcurrentDevices = 0;
+        int wrongFinalStates = 0;
+
+        for (int run = 0; run < runs; ++run) {
+            final var result = new Simulation(DETAILS, config, warmStandby, strategy, seed + run)
+                    .run(trace);
+
+            timeToLight.add(result.timeToLightNs());
+            captures += result.captures();
+            opens += result.opens();
+            torchCalls += result.torchCalls();
+            cpuTimeNs += result.cpuTimeNs();
+            folded += result.commandStats().folded();
+            stale += result.commandStats().staleCallbacks();
+            errors += result.errors();
+            maxConcurrentDevices = Math.max(maxConcurrentDevices, result.maxConcurrentDevices());
+
+            if (result.isFinalStateWrong()) {
+                ++wrongFinalStates;
+            }
+        }
+
+        final var allTimeToLight = timeToLight.stream().flatMapToLong(Arrays::stream)
+                .sorted().toArray();
+
+        return new Summary(trace.name(), configName, strategy, warmStandby, runs, allTimeToLight,
+                (double) captures / runs, (double) opens / runs, (double) torchCalls / runs,
+                cpuTimeNs / 1_000_000.0 / runs, (double) folded / runs, (double) stale / runs, (double) errors / runs,
+                maxConcurrentDevices, wrongFinalStates);
+    }
+
+    /** Run the calibration against the simulated camera, which runs to completion instantly. */
+    private static boolean calibrate(@NonNull String configName, long seed) {
+        final var scheduler = new VirtualScheduler();
+        final var backend = new SimulatedBackend(scheduler, DETAILS, CONFIGS.get(configName), seed);
+        final var outcome = new Object() {
+            CaptureCalibrator.Result result;
+            TorchError error;
+        };
+
+        final var calibrator = new CaptureCalibrator(scheduler, backend, backend::getCpuTimeNs,
+                DETAILS, DETAILS.maxBrightness(), CaptureCalibrator.DEFAULT_WINDOW_MS,
+                new CaptureCalibrator.Listener() {
+                    @Override
+                    public void onCalibrationFinished(@NonNull CaptureCalibrator.Result result) {
+                        outcome.result = result;
+                    }
+
+                    @Override
+                    public void onCalibrationFailed(@NonNull TorchError error) {
+                        outcome.error = error;
+                    }
+                });
+        calibrator.start();
+
+        while (outcome.result == null && outcome.error == null) {
+            scheduler.advanceBy(CaptureCalibrator.DEFAULT_WINDOW_MS * 1_000_000);
+        }
+
+        if (outcome.error != null) {
+            System.out.printf(Locale.ROOT, "%-8s failed: %s%n", configName, outcome.error);
+            return false;
+        }
+
+        for (final var m : outcome.result.measurements()) {
+            System.out.printf(Locale.ROOT, "%-8s %-9s %7.2fms %7.1fms %8d %7s%n",
+                    configName, m.strategy(), m.cpuTimeNs() / 1_000_000.0,
+                    m.confirmLatencyNs() / 1_000_000.0, m.failures(),
+                    m.strategy() == outcome.result.best() ? "best" : "");
+        }
+
+        return true;
+    }
+
+    /** Play a pattern against the simulated camera and turn it off again. */
+    private static boolean playPattern(@NonNull String configName, @NonNull String spec,
+                                       long seed) {
+        final var scheduler = new VirtualScheduler();
+        final var backend = new SimulatedBackend(scheduler, DETAILS, CONFIGS.get(configName), seed);
+        final var errors = new ArrayList<TorchError>();
+        final var machine = new TorchStateMachine(scheduler, backend,
+                new MemorySettings(DETAILS.maxBrightness(), false),
+                new TorchStateMachine.Callbacks() {
+                    @Override
+                    public void onTorchStateChanged(int curBrightness, int maxBrightness) {}
+
+                    @Override
+                    public void onTorchError(@NonNull TorchError error) {
+                        errors.add(error);
+                    }
+
+                    @Override
+                    public void onOwnerNeeded(boolean needed) {}
+
+                    @Override
+                    public void runAfterOwnerUpdate(@NonNull Runnable runnable) {
+                        scheduler.post(runnable);
+                    }
+                });
+        final var pattern = LightPattern.parse(spec, spec.startsWith("strobe"));
+
+        final var runNs = Math.max(pattern.getDurationNs(), PATTERN_MIN_RUN_MS * 1_000_000);
+
+        machine.startPattern(pattern);
+        scheduler.advanceBy(runNs);
+        machine.submitBrightness(0);
+        scheduler.advanceBy(PATTERN_SETTLE_MS * 1_000_000);
+        machine.release();
+
+        final var stats = machine.getPatternStats();
+        final var litAtEnd = backend.isLit();
+
+        // Every edge is measured from the first frame, so both timestamps can be off by the jitter
+        // and every missed frame slot delays the later edges by a whole frame.
+        final var config = CONFIGS.get(configName);
+        final var plan = pattern.plan(SimulatedBackend.MIN_FRAME_DURATION_NS);
+        final var maxErrorNs = planErrorNs(plan)
+                + 2 * config.timestampJitterNs()
+                + (long) (runNs * config.clockDriftPpm() / 1_000_000)
+                + backend.getDroppedPatternFrames() * plan.frameDurationNs()
+                + PATTERN_ERROR_SLACK_NS;
+        final var ok = !litAtEnd && stats.edges() > 0 && stats.maxErrorNs() <= maxErrorNs;
+
+        System.out.printf(Locale.ROOT, "%-8s %-18s %7d %7d %7d %7.3fms %7.3fms %7.3fms %7d %7s%n",
+                configName, spec, stats.edges(), stats.failedFrames(),
+                backend.getDroppedPatternFrames(), stats.meanErrorMs(),
+                stats.maxErrorNs() / 1_000_000.0, maxErrorNs / 1_000_000.0, errors.size(),
+                ok ? "ok" : "FAIL");
+
+        return ok;
+    }
+
+    /** The largest error of an edge caused by rounding it to a frame boundary. */
+    private static long planErrorNs(@NonNull LightPattern.FramePlan plan) {
+        long errorNs = 0;
+
+        for (int i = 0; i < plan.edgeOffsetsNs().length; ++i) {
+            if (plan.edgeOffsetsNs()[i] != LightPattern.NO_EDGE) {
+                errorNs = Math.max(errorNs,
+                        Math.abs(i * plan.frameDurationNs() - plan.edgeOffsetsNs()[i]));
+            }
+        }
+
+        return errorNs;
+    }
+
+    /** Fade the torch on and off again against the simulated camera. */
+    private static boolean fade(@NonNull String configName, long seed) {
+        final var scheduler = new VirtualScheduler();
+        final var backend = new SimulatedBackend(scheduler, DETAILS, CONFIGS.get(configName), seed);
+        final var errors = new ArrayList<TorchError>();
+        final var brightness = new int[] { 0 };
+        final var machine = new TorchStateMachine(scheduler, backend,
+                new MemorySettings(DETAILS.maxBrightness(), false, CaptureStrategy.SINGLE,
+                        FADE_MS),
+                new TorchStateMachine.Callbacks() {
+                    @Override
+                    public void onTorchStateChanged(int curBrightness, int maxBrightness) {
+                        brightness[0] = curBrightness;
+                    }
+
+                    @Override
+                    public void onTorchError(@NonNull TorchError error) {
+                        errors.add(error);
+                    }
+
+                    @Override
+                    public void onOwnerNeeded(boolean needed) {}
+
+                    @Override
+                    public void runAfterOwnerUpdate(@NonNull Runnable runnable) {
+                        scheduler.post(runnable);
+                    }
+                });
+
+        machine.refreshCameras();
+        machine.submitBrightness(TorchStateMachine.BRIGHTNESS_PERSISTED,
+                TorchStateMachine.FADE_DEFAULT);
+        scheduler.advanceBy((FADE_MS + FADE_SETTLE_MS) * 1_000_000);
+        final var onOk = brightness[0] == DETAILS.maxBrightness() && backend.isLit();
+
+        machine.submitBrightness(0, TorchStateMachine.FADE_DEFAULT);
+        scheduler.advanceBy((FADE_MS + FADE_SETTLE_MS) * 1_000_000);
+        final var offOk = brightness[0] == 0 && !backend.isLit();
+        machine.release();
+
+        final var stats = machine.getRampStats();
+        // Camera errors legitimately cut a ramp short.
+        final var ok = offOk && (!errors.isEmpty() || onOk && stats.completed() == 2);
+
+        System.out.printf(Locale.ROOT, "%-8s %7d %9d %7d %9d %7d %7s%n",
+                configName, stats.ramps(), stats.completed(), stats.steps(),
+                backend.getCaptures(), errors.size(), ok ? "ok" : "FAIL");
+
+        return ok;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: StressRunner [--runs <n>] [--seed <n>] [--config <"
+                + String.join("|", CONFIGS.keySet()) + ">] [--strategy <"
+                + String.join("|", Arrays.stream(CaptureStrategy.values())
+                        .map(s -> s.name().toLowerCase(Locale.ROOT)).toList())
+                + ">] [--calibrate] [--patterns] [--fades] [<trace file>...]");
+        System.exit(2);
+    }
+
+    public static void main(@NonNull String[] args) throws IOException {
+        int runs = 100;
+        long seed = 1;
+        boolean calibrate = false;
+        boolean patterns = false;
+        boolean fades = false;
+        final var configNames = new ArrayList<String>();
+        final var strategies = new ArrayList<CaptureStrategy>();
+        final var traces = new ArrayList<Trace>();
+
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--runs" -> runs = Integer.parseInt(args[++i]);
+                    case "--seed" -> seed = Long.parseLong(args[++i]);
+                    case "--config" -> {
+                        final var name = args[++i];
+                        if (!CONFIGS.containsKey(name)) {
+                            usage();
+                        }
+                        configNames.add(name);
+                    }
+                    case "--strategy" -> strategies.add(
+                            CaptureStrategy.valueOf(args[++i].toUpperCase(Locale.ROOT)));
+                    case "--calibrate" -> calibrate = true;
+                    case "--patterns" -> patterns = true;
+                    case "--fades" -> fades = true;
+                    default -> traces.add(Trace.load(Path.of(args[i])));
+                }
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            usage();
+        }
+
+        if (configNames.isEmpty()) {
+            configNames.addAll(CONFIGS.keySet());
+        }
+
+        if (calibrate) {
+            System.out.printf(Locale.ROOT, "%-8s %-9s %9s %9s %8s%n",
+                    "config", "strategy", "cpu", "confirm", "failures");
+
+            boolean failed = false;
+            for (final var configName : configNames) {
+                failed |= !calibrate(configName, seed);
+            }
+
+            System.exit(failed ? 1 : 0);
+        }
+
+        if (patterns) {
+            System.out.printf(Locale.ROOT, "%-8s %-18s %7s %7s %7s %9s %9s %9s %7s %7s%n",
+                    "config", "pattern", "edges", "failed", "dropped", "mean err", "max err",
+                    "bound", "errors", "status");
+
+            boolean failed = false;
+            for (final var configName : configNames) {
+                for (final var spec : PATTERNS) {
+                    failed |= !playPattern(configName, spec, seed);
+                }
+            }
+
+            System.exit(failed ? 1 : 0);
+        }
+
+        if (fades) {
+            System.out.printf(Locale.ROOT, "%-8s %7s %9s %7s %9s %7s %7s%n",
+                    "config", "ramps", "completed", "steps", "captures", "errors", "status");
+
+            boolean failed = false;
+            for (final var configName : configNames) {
+                failed |= !fade(configName, seed);
+            }
+
+            System.exit(failed ? 1 : 0);
+        }
+
+        if (strategies.isEmpty()) {
+            strategies.add(CaptureStrategy.SINGLE);
+        }
+        if (traces.isEmpty()) {
+            for (final var name : BUNDLED_TRACES) {
+                traces.add(Trace.loadBundled(name));
+            }
+        }
+
+        System.out.printf(Locale.ROOT,
+                "%-14s %-8s %-9s %-7s %9s %9s %9s %7s %7s %9s %7s %7s %7s %7s%n",
+                "trace", "config", "strategy", "standby", "ttl p50", "ttl p99", "captures",
+                "opens", "torch", "cpu", "folded", "stale", "errors", "status");
+
+        boolean failed = false;
+
+        for (final var trace : traces) {
+            for (final var configName : configNames) {
+                for (final var strategy : strategies) {
+                    for (final var warmStandby : new boolean[] { false, true }) {
+                        final var summary = simulate(trace, configName, strategy, warmStandby,
+                                runs, seed);
+                        printSummary(summary);
+
+                        failed |= summary.failed();
+                    }
+                }
+            }
+        }
+
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static void printSummary(@NonNull Summary summary) {
+        System.out.printf(Locale.ROOT,
+                "%-14s %-8s %-9s %-7s %7.1fms %7.1fms %9.1f %7.2f %7.1f %7.2fms %7.1f %7.2f %7.2f %7s%n",
+                summary.trace(), summary.config(), summary.strategy(), summary.warmStandby(),
+                percentileMs(summary.timeToLightNs(), 50),
+                percentileMs(summary.timeToLightNs(), 99),
+                summary.captures(), summary.opens(), summary.torchCalls(), summary.cpuMs(),
+                summary.folded(), summary.stale(), summary.errors(),
+                summary.failed() ? "FAIL" : "ok");
+
+        if (summary.maxConcurrentDevices() > 1) {
+            System.out.println("  " + summary.maxConcurrentDevices()
+                    + " camera devices were open at the same time");
+        }
+        if (summary.wrongFinalStates() > 0) {
+            System.out.println("  " + summary.wrongFinalStates() + " of " + summary.runs()
+                    + " runs left the torch in the wrong state");
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.simulator;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recorded sequence of commands to replay against the state machine. The text format has one
+ * event per line: the time in milliseconds since the start of the trace, followed by one of:
+ *
+ * <ul>
+ *     <li>{@code set <brightness>}: set an absolute brightness, where 0 turns the torch off</li>
+ *     <li>{@code toggle}: toggle between off and the persisted brightness</li>
+ *     <li>{@code persisted}: turn on at the persisted brightness</li>
+ *     <li>{@code prewarm}: pre-warm the camera, like when the quick settings panel opens</li>
+ *     <li>{@code disconnect}: another client takes over the camera</li>
+ * </ul>
+ *
+ * <p>Empty lines and everything after a {@code #} are ignored. Times must not decrease.
+ */
+public record Trace(@NonNull String name, @NonNull List<Event> events) {
+    public enum Action {
+        SET,
+        TOGGLE,
+        PERSISTED,
+        PREWARM,
+        DISCONNECT,
+    }
+
+    /** @param brightness Only used for {@link Action#SET} */
+    public record Event(long timeMs, @NonNull Action action, int brightness) {}
+
+    public long durationMs() {
+        return events.isEmpty() ? 0 : events.get(events.size() - 1).timeMs();
+    }
+
+    @NonNull
+    public static Trace parse(@NonNull String name, @NonNull BufferedReader reader)
+            throws IOException {
+        final var events = new ArrayList<Event>();
+        String line;
+        int lineNum = 0;
+
+        while ((line = reader.readLine()) != null) {
+            ++lineNum;
+
+            final var comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.strip();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            final var pieces = line.split("\\s+");
+
+            try {
+                final var timeMs = Long.parseLong(pieces[0]);
+                if (!events.isEmpty() && timeMs < events.get(events.size() - 1).timeMs()) {
+                    throw new IllegalArgumentException("Time goes backwards");
+                }
+
+                final var action = Action.valueOf(pieces[1].toUpperCase());
+                final var brightness = action == Action.SET ? Integer.parseInt(pieces[2]) : 0;
+                if (brightness < 0) {
+                    throw new IllegalArgumentException("Negative brightness");
+                }
+
+                final var expectedPieces = action == Action.SET ? 3 : 2;
+                if (pieces.length != expectedPieces) {
+                    throw new IllegalArgumentException("Expected " + expectedPieces + " fields");
+                }
+
+                events.add(new Event(timeMs, action, brightness));
+            } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+                throw new IOException(name + ":" + lineNum + ": Invalid event: " + line, e);
+            }
+        }
+
+        return new Trace(name, List.copyOf(events));
+    }
+
+    @NonNull
+    public static Trace load(@NonNull Path path) throws IOException {
+        try (var reader = Files.newBufferedReader(path)) {
+            return parse(path.getFileName().toString(), reader);
+        }
+    }
+
+    /** Load one of the traces bundled with the simulator from {@code traces/<name>.trace}. */
+    @NonNull
+    public static Trace loadBundled(@NonNull String name) throws IOException {
+        final var stream = Trace.class.getResourceAsStream("/traces/" + name + ".trace");
+        if (stream == null) {
+            throw new IOException("No bundled trace: " + name);
+        }
+
+        try (var reader = new BufferedReader(
+                new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            return parse(name, reader);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * SPDX-FileCopyrightText: 2026 Andrew Gunnerson
+ * SPDX-License-Identifier: GPL-3.0-only
+ */
+
+package com.chiller3.pixellight.simulator;
+
+import androidx.annotation.NonNull;
+
+import com.chiller3.pixellight.core.Scheduler;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * A {@link Scheduler} that runs everything on the calling thread with a virtual clock. Nothing
+ * runs until {@link #runPending()} or {@link #advanceBy(long)} is called. This is not thread safe.
+ */
+public class VirtualScheduler implements Scheduler {
+    private record Delayed(long timeNs, long seq, @NonNull Runnable runnable) {}
+
+    private final ArrayDeque<Runnable> ready = new ArrayDeque<>();
+    private final PriorityQueue<Delayed> delayed = new PriorityQueue<>(
+            Comparator.comparingLong(Delayed::timeNs).thenComparingLong(Delayed::seq));
+    private long nowNs = 0;
+    private long delayedSeq = 0;
+
+    @Override
+    public long nanoTime() {
+        return nowNs;
+    }
+
+    @Override
+    public boolean post(@NonNull Runnable runnable) {
+        ready.addLast(runnable);
+        return true;
+    }
+
+    @Override
+    public boolean postDelayed(@NonNull Runnable runnable, long delayMs) {
+        return postDelayedNs(runnable, delayMs * 1_000_000);
+    }
+
+    /** Same as {@link #postDelayed(Runnable, long)}, but with nanosecond precision. */
+    public boolean postDelayedNs(@NonNull Runnable runnable, long delayNs) {
+        if (delayNs <= 0) {
+            return post(runnable);
+        }
+
+        delayed.add(new Delayed(nowNs + delayNs, delayedSeq++, runnable));
+        return true;
+    }
+
+    @Override
+    public void removeCallbacks(@NonNull Runnable runnable) {
+        ready.removeIf(r -> r == runnable);
+        delayed.removeIf(d -> d.runnable() == runnable);
+    }
+
+    /** Run everything that is ready now, including things they post, without advancing time. */
+    public void runPending() {
+        Runnable runnable;
+        while ((runnable = ready.pollFirst()) != null) {
+            runnable.run();
+        }
+    }
+
+    /** Advance the clock, running everything that becomes ready along the way. */
+    public void advanceBy(long durationNs) {
+        advanceTo(nowNs + durationNs);
+    }
+
+    /** Advance the clock to an absolute time. Nothing happens if the time is in the past. */
+    public void advanceTo(long timeNs) {
+        runPending();
+
+        Delayed next;
+        while ((next = delayed.peek()) != null && next.timeNs() <= timeNs) {
+            delayed.poll();
+            nowNs = next.timeNs();
+            next.runnable().run();
+            runPending();
+        }
+
+        nowNs = Math.max(nowNs, timeNs);
+    }
+
+    /** Advance the clock until there is nothing left to run. */
+    public void runUntilIdle() {
+        runPending();
+
+        Delayed next;
+        while ((next = delayed.poll()) != null) {
+            nowNs = next.timeNs();
+            next.runnable().run();
+            runPending();
+        }
+    }
+}